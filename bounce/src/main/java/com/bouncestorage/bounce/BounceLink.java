@@ -5,16 +5,22 @@
 
 package com.bouncestorage.bounce;
 
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Throwables.propagate;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.URI;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
@@ -22,12 +28,14 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.net.MediaType;
 
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobMetadata;
 import org.jclouds.blobstore.domain.MutableBlobMetadata;
+import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.domain.StorageType;
 import org.jclouds.blobstore.domain.internal.MutableBlobMetadataImpl;
 import org.jclouds.io.ContentMetadata;
@@ -43,6 +51,12 @@ public final class BounceLink implements Serializable {
     private static final Map<String, String> BOUNCE_ATTR = ImmutableMap.of(
             BOUNCE_LINK, ""
     );
+    private static final byte[] MAGIC = {'B', 'L'};
+    private static final int VERSION = 1;
+    // Swift limits metadata values to 256 bytes
+    private static final int MAX_INLINE_LENGTH = 256;
+    // far from any metadata size the stores accept, and bounds even the serialized links
+    private static final long MAX_LINK_SIZE = 16 * 1024;
     private static final Logger logger = LoggerFactory.getLogger(BounceLink.class);
     private MutableBlobMetadata metadata;
 
@@ -65,12 +79,49 @@ public final class BounceLink implements Serializable {
         return metadata.getUserMetadata().containsKey(BOUNCE_LINK);
     }
 
+    /**
+     * Return whether a listed object may be a link, judging by its size
+     * alone. Listings do not carry user metadata, and this tells most
+     * objects apart from links without a HEAD.
+     */
+    public static boolean mayBeLink(StorageMetadata metadata) {
+        return metadata.getSize() == null || metadata.getSize() <= MAX_LINK_SIZE;
+    }
+
+    /**
+     * Decode a link whose content fits in the metadata of its blob.
+     *
+     * @return null if the link content is in the blob payload
+     */
+    public static BounceLink fromMetadata(BlobMetadata linkMetadata) throws IOException {
+        String encoded = linkMetadata.getUserMetadata().get(BOUNCE_LINK);
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+        try {
+            return decode(Base64.getUrlDecoder().decode(encoded), linkMetadata);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid link " + linkMetadata.getName(), e);
+        }
+    }
+
     public static BounceLink fromBlob(Blob b) throws IOException {
-        try (InputStream is = b.getPayload().openStream();
-             ObjectInputStream ois = new ObjectInputStream(is)) {
+        BounceLink link = fromMetadata(b.getMetadata());
+        if (link != null) {
+            return link;
+        }
+        byte[] payload;
+        try (InputStream is = b.getPayload().openStream()) {
+            payload = ByteStreams.toByteArray(is);
+        }
+        if (payload.length >= MAGIC.length && payload[0] == MAGIC[0] && payload[1] == MAGIC[1]) {
+            return decode(payload, b.getMetadata());
+        }
+        // links written before the compact encoding are serialized objects
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(payload))) {
             Object obj = ois.readObject();
             if (obj instanceof BounceLink) {
-                BounceLink link = (BounceLink) obj;
+                link = (BounceLink) obj;
                 logger.debug("deserialized as {}", link.metadata);
                 return link;
             }
@@ -80,22 +131,70 @@ public final class BounceLink implements Serializable {
         }
     }
 
+    /**
+     * Return a blob holding the link. Short links are encoded in the blob
+     * metadata so that a HEAD is enough to follow them, longer ones in the
+     * blob payload.
+     */
     public Blob toBlob(BlobStore store) {
-        byte[] payload = toBlobPayload();
+        byte[] encoded = encode();
+        String inline = Base64.getUrlEncoder().withoutPadding().encodeToString(encoded);
+        byte[] payload;
+        Map<String, String> userMetadata;
+        if (inline.length() <= MAX_INLINE_LENGTH) {
+            payload = new byte[0];
+            userMetadata = ImmutableMap.of(BOUNCE_LINK, inline);
+        } else {
+            payload = encoded;
+            userMetadata = BOUNCE_ATTR;
+            checkState(payload.length <= MAX_LINK_SIZE, "link to %s is too large", metadata.getName());
+        }
         return store.blobBuilder(metadata.getName())
                 .payload(new ByteSourcePayload(ByteSource.wrap(payload)))
                 .contentLength(payload.length)
                 .contentMD5(Hashing.md5().hashBytes(payload))
                 .contentType(MediaType.OCTET_STREAM)
-                .userMetadata(BounceLink.BOUNCE_ATTR)
+                .userMetadata(userMetadata)
                 .build();
     }
 
-    private byte[] toBlobPayload() {
+    /**
+     * Encode the link without the container and name of the object, which
+     * are the same as those of the link blob.
+     */
+    private byte[] encode() {
         try {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-                oos.writeObject(this);
+            try (DataOutputStream out = new DataOutputStream(bos)) {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                writeString(out, metadata.getETag());
+                writeDate(out, metadata.getCreationDate());
+                writeDate(out, metadata.getLastModified());
+                writeLong(out, metadata.getSize());
+                writeString(out, metadata.getType() == null ? null : metadata.getType().name());
+                writeString(out, metadata.getUri() == null ? null : metadata.getUri().toString());
+                writeString(out, metadata.getPublicUri() == null ? null : metadata.getPublicUri().toString());
+                Map<String, String> userMetadata = metadata.getUserMetadata();
+                out.writeInt(userMetadata.size());
+                for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    writeString(out, entry.getValue());
+                }
+                ContentMetadata cmeta = metadata.getContentMetadata();
+                writeString(out, cmeta.getContentDisposition());
+                writeString(out, cmeta.getContentEncoding());
+                writeString(out, cmeta.getContentLanguage());
+                writeLong(out, cmeta.getContentLength());
+                if (cmeta.getContentMD5AsHashCode() != null) {
+                    byte[] md5 = cmeta.getContentMD5AsHashCode().asBytes();
+                    out.writeByte(md5.length);
+                    out.write(md5);
+                } else {
+                    out.writeByte(0);
+                }
+                writeString(out, cmeta.getContentType());
+                writeDate(out, cmeta.getExpires());
             }
             return bos.toByteArray();
         } catch (IOException e) {
@@ -103,6 +202,85 @@ public final class BounceLink implements Serializable {
         }
     }
 
+    private static BounceLink decode(byte[] encoded, BlobMetadata linkMetadata) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            if (in.readByte() != MAGIC[0] || in.readByte() != MAGIC[1]) {
+                throw new IOException("invalid link " + linkMetadata.getName());
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("unsupported version " + version + " of link " + linkMetadata.getName());
+            }
+            MutableBlobMetadata metadata = new MutableBlobMetadataImpl();
+            metadata.setContainer(linkMetadata.getContainer());
+            metadata.setName(linkMetadata.getName());
+            metadata.setETag(readString(in));
+            metadata.setCreationDate(readDate(in));
+            metadata.setLastModified(readDate(in));
+            metadata.setSize(readLong(in));
+            String type = readString(in);
+            metadata.setType(type == null ? null : StorageType.valueOf(type));
+            String uri = readString(in);
+            metadata.setUri(uri == null ? null : URI.create(uri));
+            String publicUri = readString(in);
+            metadata.setPublicUri(publicUri == null ? null : URI.create(publicUri));
+            int userMetadataSize = in.readInt();
+            Map<String, String> userMetadata = new HashMap<>();
+            for (int i = 0; i < userMetadataSize; i++) {
+                userMetadata.put(in.readUTF(), readString(in));
+            }
+            metadata.setUserMetadata(userMetadata);
+            MutableContentMetadata cmeta = metadata.getContentMetadata();
+            cmeta.setContentDisposition(readString(in));
+            cmeta.setContentEncoding(readString(in));
+            cmeta.setContentLanguage(readString(in));
+            cmeta.setContentLength(readLong(in));
+            int md5Length = in.readUnsignedByte();
+            if (md5Length != 0) {
+                byte[] md5 = new byte[md5Length];
+                in.readFully(md5);
+                cmeta.setContentMD5(HashCode.fromBytes(md5));
+            }
+            cmeta.setContentType(readString(in));
+            cmeta.setExpires(readDate(in));
+
+            BounceLink link = new BounceLink(Optional.empty());
+            link.metadata = metadata;
+            return link;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeDate(DataOutputStream out, Date value) throws IOException {
+        writeLong(out, value == null ? null : value.getTime());
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        Long time = readLong(in);
+        return time == null ? null : new Date(time);
+    }
+
     private void writeObject(ObjectOutputStream oos) throws IOException {
         oos.writeObject(metadata.getContainer());
         oos.writeObject(metadata.getPublicUri());
@@ -199,7 +199,7 @@ public interface IForwardingBlobStore extends BlobStore {
 
     @Override
     default MultipartUpload initiateMultipartUpload(String s, BlobMetadata blobMetadata) {
-        return delegate().initiateMultipartUpload(s, blobMetadata);
+        return delegate().initiateMultipartUpload(mapContainer(s), blobMetadata);
     }
 
     @Override
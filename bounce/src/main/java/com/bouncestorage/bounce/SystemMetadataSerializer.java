@@ -13,7 +13,10 @@ import java.util.function.Function;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
 
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MutableBlobMetadata;
 import org.jclouds.blobstore.domain.MutableStorageMetadata;
 import org.jclouds.blobstore.domain.StorageMetadata;
 
@@ -32,7 +35,19 @@ public abstract class SystemMetadataSerializer<T> {
                     m -> m.getLastModified().toInstant(),
                     Instant::toString,
                     Instant::parse,
-                    (m, t) -> m.setLastModified(Date.from(t)))
+                    (m, t) -> m.setLastModified(Date.from(t))),
+            // the digest copies are verified against, for stores that do not report it
+            SystemMetadataSerializer.create(
+                    "md5",
+                    m -> m instanceof BlobMetadata ?
+                            ((BlobMetadata) m).getContentMetadata().getContentMD5AsHashCode() : null,
+                    HashCode::toString,
+                    HashCode::fromString,
+                    (m, t) -> {
+                        if (m instanceof MutableBlobMetadata) {
+                            ((MutableBlobMetadata) m).getContentMetadata().setContentMD5(t);
+                        }
+                    })
     );
 
     public static <T> SystemMetadataSerializer<T> create(String name,
@@ -44,9 +59,10 @@ public abstract class SystemMetadataSerializer<T> {
                 METADATA_PREFIX + name, getter, serializer, deserializer, setter);
     }
 
+    /** Return the serialized value, or null if the metadata does not have it. */
     public String serialize(StorageMetadata meta) {
         T value = getMetadataGetter().apply(meta);
-        return getSerializer().apply(value);
+        return value == null ? null : getSerializer().apply(value);
     }
 
     public void deserialize(MutableStorageMetadata meta, String s) {
@@ -10,7 +10,10 @@ import static com.google.common.base.Throwables.propagate;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
@@ -18,16 +21,26 @@ import java.util.Optional;
 import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nullable;
 
+import com.bouncestorage.bounce.admin.BackendThrottle;
 import com.bouncestorage.bounce.admin.BouncePolicy;
+import com.bouncestorage.bounce.admin.LoggingBlobStore;
 import com.bouncestorage.bounce.utils.BlobStoreByteSource;
+import com.bouncestorage.bounce.utils.ContentDigest;
+import com.bouncestorage.bounce.utils.DigestMismatchException;
+import com.bouncestorage.bounce.utils.MultipartCopier;
+import com.bouncestorage.bounce.utils.SwiftSegmentCopier;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Module;
 
 import org.jclouds.Constants;
@@ -40,6 +53,9 @@ import org.jclouds.blobstore.domain.BlobMetadata;
 import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.domain.internal.BlobImpl;
+import org.jclouds.blobstore.domain.internal.MutableBlobMetadataImpl;
+import org.jclouds.blobstore.options.CopyOptions;
 import org.jclouds.blobstore.options.ListContainerOptions;
 import org.jclouds.blobstore.options.PutOptions;
 import org.jclouds.io.ContentMetadata;
@@ -53,6 +69,17 @@ public final class Utils {
     public static final String RANDOM_CONTAINER_REGEX = "^bounce-[0-9]+$";
     private static final PutOptions MULTIPART_PUT = new PutOptions().multipart(true);
     private static final Logger logger = LoggerFactory.getLogger(Utils.class);
+    private static final ExecutorService CRAWL_PREFETCH_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("crawl-prefetch-%d").setDaemon(true).build());
+    // objects at least this large are copied as parallel ranged parts
+    private static final long PARALLEL_COPY_THRESHOLD = 64L * 1024 * 1024;
+    private static final ExecutorService PART_COPY_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("part-copy-%d").setDaemon(true).build());
+    private static final MultipartCopier MULTIPART_COPIER = new MultipartCopier(
+            PART_COPY_EXECUTOR, 256L * 1024 * 1024, 3);
+    private static final SwiftSegmentCopier SWIFT_SEGMENT_COPIER = new SwiftSegmentCopier(PART_COPY_EXECUTOR, 8);
+    // providers whose etags are the MD5 of the content of objects not uploaded in parts
+    private static final ImmutableSet<String> MD5_ETAG_PROVIDERS = ImmutableSet.of("transient", "filesystem");
 
     private Utils() {
         throw new AssertionError("intentionally unimplemented");
@@ -67,7 +94,29 @@ public final class Utils {
     public static Iterable<StorageMetadata> crawlBlobStore(
             BlobStore blobStore, String containerName,
             ListContainerOptions options) {
-        return new CrawlBlobStoreIterable(blobStore, containerName, options);
+        return crawlBlobStore(blobStore, containerName, options, null);
+    }
+
+    /**
+     * Crawl the container up to and including endMarker, a null endMarker
+     * crawls to the end of the container.
+     */
+    public static Iterable<StorageMetadata> crawlBlobStore(
+            BlobStore blobStore, String containerName,
+            ListContainerOptions options, @Nullable String endMarker) {
+        return crawlBlobStore(blobStore, containerName, options, endMarker, 0);
+    }
+
+    /**
+     * Crawl the container while listing up to prefetchDepth pages ahead of
+     * the consumer in the background, so that page boundaries do not stall on
+     * a round trip. At most prefetchDepth pages are buffered per iterator.
+     */
+    public static Iterable<StorageMetadata> crawlBlobStore(
+            BlobStore blobStore, String containerName,
+            ListContainerOptions options, @Nullable String endMarker,
+            int prefetchDepth) {
+        return new CrawlBlobStoreIterable(blobStore, containerName, options, endMarker, prefetchDepth);
     }
 
     public static BlobStore storeFromProperties(Properties properties) {
@@ -127,18 +176,23 @@ public final class Utils {
         private final BlobStore blobStore;
         private final String containerName;
         private final ListContainerOptions options;
+        private final String endMarker;
+        private final int prefetchDepth;
 
         CrawlBlobStoreIterable(BlobStore blobStore, String containerName,
-                ListContainerOptions options) {
+                ListContainerOptions options, @Nullable String endMarker,
+                int prefetchDepth) {
             this.blobStore = Objects.requireNonNull(blobStore);
             this.containerName = Objects.requireNonNull(containerName);
             this.options = Objects.requireNonNull(options).clone();
+            this.endMarker = endMarker;
+            this.prefetchDepth = prefetchDepth;
         }
 
         @Override
         public Iterator<StorageMetadata> iterator() {
             return new CrawlBlobStoreIterator(blobStore, containerName,
-                    options);
+                    options.clone(), endMarker, prefetchDepth);
         }
     }
 
@@ -147,38 +201,122 @@ public final class Utils {
         private final BlobStore blobStore;
         private final String containerName;
         private final ListContainerOptions options;
+        private final String endMarker;
+        private final int prefetchDepth;
+        // prefetches run on other threads, which have to be throttled like the consumer
+        private final boolean background;
         private Iterator<? extends StorageMetadata> iterator;
+
+        // guarded by this
+        private final Deque<PageSet<? extends StorageMetadata>> pages = new ArrayDeque<>();
         private String marker;
+        private boolean listed;
+        private boolean fetching;
+        private RuntimeException failure;
 
         CrawlBlobStoreIterator(BlobStore blobStore, String containerName,
-                ListContainerOptions options) {
+                ListContainerOptions options, @Nullable String endMarker,
+                int prefetchDepth) {
             this.blobStore = Objects.requireNonNull(blobStore);
             this.containerName = Objects.requireNonNull(containerName);
             this.options = Objects.requireNonNull(options);
+            this.endMarker = endMarker;
+            this.prefetchDepth = prefetchDepth;
+            this.background = BackendThrottle.isBackground();
             if (options.getDelimiter() == null && options.getDir() == null) {
                 this.options.recursive();
             }
-            advance();
+            iterator = nextPage();
         }
 
-        private void advance() {
-            if (marker != null) {
-                options.afterMarker(marker);
+        private PageSet<? extends StorageMetadata> list(@Nullable String afterMarker) {
+            ListContainerOptions listOptions = options.clone();
+            if (afterMarker != null) {
+                listOptions.afterMarker(afterMarker);
+            }
+            return blobStore.list(containerName, listOptions);
+        }
+
+        private boolean isLastPage(PageSet<? extends StorageMetadata> set) {
+            String next = set.getNextMarker();
+            return next == null || (endMarker != null && next.compareTo(endMarker) >= 0);
+        }
+
+        private Iterator<? extends StorageMetadata> nextPage() {
+            if (prefetchDepth <= 0) {
+                if (listed) {
+                    return null;
+                }
+                PageSet<? extends StorageMetadata> set = list(marker);
+                marker = set.getNextMarker();
+                listed = isLastPage(set);
+                return set.iterator();
+            }
+
+            synchronized (this) {
+                maybePrefetch();
+                while (pages.isEmpty() && failure == null && (fetching || !listed)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw propagate(e);
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                PageSet<? extends StorageMetadata> set = pages.poll();
+                maybePrefetch();
+                return set == null ? null : set.iterator();
+            }
+        }
+
+        private synchronized void maybePrefetch() {
+            if (!fetching && !listed && failure == null && pages.size() < prefetchDepth) {
+                fetching = true;
+                String afterMarker = marker;
+                if (background) {
+                    CRAWL_PREFETCH_EXECUTOR.execute(() -> BackendThrottle.runInBackground(
+                            () -> prefetch(afterMarker)));
+                } else {
+                    CRAWL_PREFETCH_EXECUTOR.execute(() -> prefetch(afterMarker));
+                }
+            }
+        }
+
+        private void prefetch(@Nullable String afterMarker) {
+            PageSet<? extends StorageMetadata> set;
+            try {
+                set = list(afterMarker);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    failure = e;
+                    fetching = false;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                pages.add(set);
+                marker = set.getNextMarker();
+                listed = isLastPage(set);
+                fetching = false;
+                // keep going until the buffer is full, the consumer restarts
+                // us once it drains a page
+                maybePrefetch();
+                notifyAll();
             }
-            PageSet<? extends StorageMetadata> set = blobStore.list(
-                    containerName, options);
-            marker = set.getNextMarker();
-            iterator = set.iterator();
         }
 
         @Override
         protected StorageMetadata computeNext() {
             while (true) {
+                if (iterator == null) {
+                    return endOfData();
+                }
                 if (!iterator.hasNext()) {
-                    if (marker == null) {
-                        return endOfData();
-                    }
-                    advance();
+                    iterator = nextPage();
                     continue;
                 }
                 StorageMetadata metadata = iterator.next();
@@ -186,6 +324,9 @@ public final class Utils {
                 if (metadata.getType() == StorageType.RELATIVE_PATH) {
                     continue;
                 }
+                if (endMarker != null && metadata.getName().compareTo(endMarker) > 0) {
+                    return endOfData();
+                }
                 return metadata;
             }
         }
@@ -197,16 +338,25 @@ public final class Utils {
             return null;
         }
         ContentMetadata metadata = blobFrom.getMetadata().getContentMetadata();
+        ContentDigest digest = new ContentDigest();
         PayloadBlobBuilder builder = to.blobBuilder(blobFrom.getMetadata().getName())
                 .userMetadata(blobFrom.getMetadata().getUserMetadata())
-                .payload(is);
+                .payload(digest.wrap(is));
 
         copyToBlobBuilder(metadata, builder);
 
+        String etag;
         if (isSwiftBlobStore(to)) {
-            copySwiftBlob(from, to, containerNameTo, builder.build());
+            etag = copySwiftBlob(from, to, containerNameTo, builder.build());
         } else {
-            to.putBlob(containerNameTo, builder.build(), MULTIPART_PUT);
+            etag = to.putBlob(containerNameTo, builder.build(), MULTIPART_PUT);
+        }
+        try {
+            // the etag of a multipart put is not the MD5 of the object
+            verifyCopy(from, to, blobFrom.getMetadata(), digest.hash(), null);
+        } catch (DigestMismatchException e) {
+            // so that the caller can tell the corrupt copy from a later write
+            throw new DigestMismatchException(e.getMessage(), etag);
         }
         return blobFrom;
     }
@@ -254,14 +404,84 @@ public final class Utils {
         return blobStore.getContext().unwrap().getId().equals("openstack-swift");
     }
 
-    private static void copySwiftBlob(BlobStore from, BlobStore to, String containerNameTo, Blob blob) {
-        // TODO: swift object semantic changes if we do multipart upload,
-        // if both sides are swift, we may want to just copy the individual parts
+    /**
+     * Return whether copies from and to the store are verified, which the
+     * configuration of the backend can disable.
+     */
+    public static boolean verifiesCopies(BlobStore blobStore) {
+        for (BlobStore store = blobStore; store instanceof IForwardingBlobStore;
+             store = ((IForwardingBlobStore) store).delegate()) {
+            if (store instanceof LoggingBlobStore) {
+                return ((LoggingBlobStore) store).verifiesCopies();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return whether the etags of the store that are MD5s are the MD5s of
+     * the content. Only stores known to report them are trusted: S3 etags
+     * are not the MD5 of objects encrypted with KMS or customer keys,
+     * encrypted stores report the etags of the ciphertext, and swift reports
+     * the MD5 of the segment etags for large objects.
+     */
+    public static boolean hasContentETags(BlobStore blobStore) {
+        return MD5_ETAG_PROVIDERS.contains(blobStore.getContext().unwrap().getId()) && verifiesCopies(blobStore);
+    }
+
+    /**
+     * Check the MD5 of the copied bytes, if they were digested, against the
+     * content MD5 or etag of the source and the etag of the copy, so that a
+     * copy is verified without reading it again.
+     */
+    private static void verifyCopy(BlobStore from, BlobStore to, BlobMetadata source, @Nullable HashCode actual,
+                                   @Nullable String etagTo) throws DigestMismatchException {
+        if (actual == null) {
+            return;
+        }
+        if (verifiesCopies(from)) {
+            HashCode expected = source.getContentMetadata().getContentMD5AsHashCode();
+            HashCode etagMD5 = ContentDigest.md5FromETag(source.getETag());
+            if (!hasContentETags(from) && Objects.equals(expected, etagMD5)) {
+                // some providers fill in the content MD5 from the etag
+                expected = null;
+            } else if (expected == null && hasContentETags(from)) {
+                expected = etagMD5;
+            }
+            ContentDigest.verify(source.getName(), "source", actual, expected);
+        }
+        if (hasContentETags(to)) {
+            ContentDigest.verify(source.getName(), "copy", actual, ContentDigest.md5FromETag(etagTo));
+        }
+    }
+
+    private static String copySwiftBlob(BlobStore from, BlobStore to, String containerNameTo, Blob blob) {
+        // swift object semantic changes if we do multipart upload, so large
+        // objects are only re-segmented when they are too large for one put
         PutOptions options = PutOptions.NONE;
         if (blob.getMetadata().getContentMetadata().getContentLength() > to.getMaximumMultipartPartSize()) {
             options = MULTIPART_PUT;
         }
-        to.putBlob(containerNameTo, blob, options);
+        return to.putBlob(containerNameTo, blob, options);
+    }
+
+    /**
+     * Copy a large object between swift stores segment by segment, keeping
+     * its segments. Return false if blobFrom is not a large object.
+     */
+    private static boolean copySwiftSegments(BlobStore from, BlobStore to, String containerNameTo, Blob blobFrom,
+                                             BlobMetadata metadata) throws IOException {
+        if (!isSwiftBlobStore(from) || blobFrom.getMetadata().getSize() <= from.getMinimumMultipartPartSize()) {
+            return false;
+        }
+        // the segments are found by the manifest of the source, the copy has no etag yet
+        if (!SWIFT_SEGMENT_COPIER.copy(from, blobFrom.getMetadata().getContainer(), blobFrom.getMetadata(), to,
+                containerNameTo, metadata)) {
+            return false;
+        }
+        // the segments are read with their own requests
+        blobFrom.getPayload().close();
+        return true;
     }
 
     public static Blob copyBlob(BlobStore from, BlobStore to, String containerNameTo, Blob blobFrom,
@@ -277,44 +497,74 @@ public final class Utils {
 
         Map<String, String> userMetadata = blobFrom.getMetadata().getUserMetadata();
         if (saveSystemMetadata) {
-            SystemMetadataSerializer.SYSTEM_METADATA
-                    .forEach(t -> userMetadata.put(t.getName(), t.serialize(blobFrom.getMetadata())));
+            putSystemMetadata(userMetadata, blobFrom.getMetadata());
         }
 
         ContentMetadata metadata = blobFrom.getMetadata().getContentMetadata();
+        ContentDigest digest = new ContentDigest();
         PayloadBlobBuilder builder = to.blobBuilder(blobFrom.getMetadata().getName())
                 .userMetadata(userMetadata)
-                .payload(new BlobStoreByteSource(from, blobFrom, blobFrom.getMetadata().getSize()));
+                .payload(digest.wrap(new BlobStoreByteSource(from, blobFrom, blobFrom.getMetadata().getSize())));
 
         copyToBlobBuilder(metadata, builder);
 
         if (isSwiftBlobStore(to)) {
-            copySwiftBlob(from, to, containerNameTo, builder.build());
+            Blob blob = builder.build();
+            if (!copySwiftSegments(from, to, containerNameTo, blobFrom, blob.getMetadata())) {
+                copySwiftBlob(from, to, containerNameTo, blob);
+            }
+        } else if (isParallelCopy(to, blobFrom.getMetadata().getSize())) {
+            Blob blob = builder.build();
+            // the parts are read with their own ranged requests
+            blobFrom.getPayload().close();
+            MULTIPART_COPIER.copy(from, blobFrom.getMetadata().getContainer(), to, containerNameTo,
+                    blob.getMetadata());
         } else {
             PutOptions options = PutOptions.NONE;
             if (blobFrom.getMetadata().getSize() >= to.getMinimumMultipartPartSize()) {
                 options = MULTIPART_PUT;
             }
-            to.putBlob(containerNameTo, builder.build(), options);
+            String etag = to.putBlob(containerNameTo, builder.build(), options);
+            verifyCopy(from, to, blobFrom.getMetadata(), digest.hash(), options == PutOptions.NONE ? etag : null);
         }
         return blobFrom;
     }
 
+    /** Record the system metadata of the source that the copy would lose, skipping what the source lacks. */
+    private static void putSystemMetadata(Map<String, String> userMetadata, BlobMetadata metadata) {
+        for (SystemMetadataSerializer<?> serializer : SystemMetadataSerializer.SYSTEM_METADATA) {
+            String value = serializer.serialize(metadata);
+            if (value != null) {
+                userMetadata.put(serializer.getName(), value);
+            }
+        }
+    }
+
+
+    private static boolean isParallelCopy(BlobStore to, long size) {
+        return size >= PARALLEL_COPY_THRESHOLD && size > MultipartCopier.getPartSize(to, size);
+    }
 
-    // TODO: eventually this should support parallel copies, cancellation, and
-    // multi-part uploads
+    /**
+     * Copy the named object. Containers of the same backend copy it on the
+     * backend. Otherwise large objects are copied as multipart uploads of
+     * parts read in parallel; interrupting the calling thread cancels the copy.
+     */
     public static Blob copyBlob(BlobStore from, BlobStore to,
                                 String containerNameFrom, String containerNameTo, String blobName)
             throws IOException {
         return copyBlob(from, to, containerNameFrom, containerNameTo, blobName, false);
     }
 
-    // TODO: eventually this should support parallel copies, cancellation, and
-    // multi-part uploads
     public static Blob copyBlob(BlobStore from, BlobStore to,
                                 String containerNameFrom, String containerNameTo, String blobName,
                                 boolean saveSystemMetadata)
             throws IOException {
+        if (sharesBackend(from, to)) {
+            return copyBlobInBackend((BlobStoreTarget) from, (BlobStoreTarget) to, containerNameFrom,
+                    containerNameTo, blobName, saveSystemMetadata);
+        }
+
         Blob blobFrom = from.getBlob(containerNameFrom, blobName);
         if (blobFrom == null) {
             return null;
@@ -323,6 +573,39 @@ public final class Utils {
         return copyBlob(from, to, containerNameTo, blobFrom, saveSystemMetadata);
     }
 
+    /** Return whether both stores are containers of the same backend, which can copy between them. */
+    private static boolean sharesBackend(BlobStore from, BlobStore to) {
+        return from instanceof BlobStoreTarget && to instanceof BlobStoreTarget &&
+                ((BlobStoreTarget) from).delegate() == ((BlobStoreTarget) to).delegate();
+    }
+
+    private static Blob copyBlobInBackend(BlobStoreTarget from, BlobStoreTarget to,
+                                          String containerNameFrom, String containerNameTo, String blobName,
+                                          boolean saveSystemMetadata) {
+        BlobMetadata metadata = from.blobMetadata(containerNameFrom, blobName);
+        if (metadata == null) {
+            return null;
+        }
+
+        if (BounceLink.isLink(metadata)) {
+            throw new IllegalArgumentException(blobName + " is a link");
+        }
+
+        CopyOptions options = CopyOptions.NONE;
+        if (saveSystemMetadata) {
+            Map<String, String> userMetadata = new HashMap<>(metadata.getUserMetadata());
+            putSystemMetadata(userMetadata, metadata);
+            // replacing the user metadata replaces the content metadata as well
+            options = CopyOptions.builder()
+                    .contentMetadata(metadata.getContentMetadata())
+                    .userMetadata(userMetadata)
+                    .build();
+        }
+        from.delegate().copyBlob(from.mapContainer(containerNameFrom), blobName,
+                to.mapContainer(containerNameTo), blobName, options);
+        return new BlobImpl(new MutableBlobMetadataImpl(metadata));
+    }
+
     static void moveBlob(BlobStore from, BlobStore to,
             String containerNameFrom, String containerNameTo, String blobName)
             throws IOException {
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.RateLimiter;
+
+import org.jclouds.io.Payload;
+import org.jclouds.io.payloads.ByteSourcePayload;
+import org.jclouds.io.payloads.InputStreamPayload;
+
+/**
+ * Token buckets limiting the bytes and requests per second that background
+ * tasks, bounces and scheduled reconciles, send to one backend. Foreground
+ * requests are never throttled. A limit of 0 disables that bucket.
+ */
+public final class BackendThrottle {
+    public static final String BYTES_PER_SECOND = "background.bytes-per-second";
+    public static final String REQUESTS_PER_SECOND = "background.requests-per-second";
+
+    private static final ThreadLocal<Boolean> BACKGROUND = ThreadLocal.withInitial(() -> false);
+
+    private volatile RateLimiter bytes;
+    private volatile RateLimiter requests;
+    private volatile long bytesPerSecond;
+    private volatile long requestsPerSecond;
+
+    public BackendThrottle(long bytesPerSecond, long requestsPerSecond) {
+        setLimits(bytesPerSecond, requestsPerSecond);
+    }
+
+    public static boolean isBackground() {
+        return BACKGROUND.get();
+    }
+
+    /** Wrap a task so that the blob store requests it makes are throttled. */
+    public static <T> Callable<T> background(Callable<T> task) {
+        return () -> {
+            boolean previous = BACKGROUND.get();
+            BACKGROUND.set(true);
+            try {
+                return task.call();
+            } finally {
+                BACKGROUND.set(previous);
+            }
+        };
+    }
+
+    public static void runInBackground(Runnable task) {
+        boolean previous = BACKGROUND.get();
+        BACKGROUND.set(true);
+        try {
+            task.run();
+        } finally {
+            BACKGROUND.set(previous);
+        }
+    }
+
+    public synchronized void setLimits(long newBytesPerSecond, long newRequestsPerSecond) {
+        bytes = updateLimiter(bytes, newBytesPerSecond);
+        requests = updateLimiter(requests, newRequestsPerSecond);
+        bytesPerSecond = newBytesPerSecond;
+        requestsPerSecond = newRequestsPerSecond;
+    }
+
+    private static RateLimiter updateLimiter(RateLimiter limiter, long rate) {
+        if (rate <= 0) {
+            return null;
+        } else if (limiter == null) {
+            return RateLimiter.create(rate);
+        }
+        limiter.setRate(rate);
+        return limiter;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void acquireRequest() {
+        RateLimiter limiter = requests;
+        if (limiter != null) {
+            limiter.acquire();
+        }
+    }
+
+    void acquireBytes(int count) {
+        RateLimiter limiter = bytes;
+        if (limiter != null && count > 0) {
+            limiter.acquire(count);
+        }
+    }
+
+    /** Return a payload whose content is read no faster than the byte limit. */
+    public Payload wrap(Payload payload) {
+        if (payload == null || bytes == null) {
+            return payload;
+        }
+        Payload throttled;
+        if (payload.getRawContent() instanceof ByteSource) {
+            throttled = new ByteSourcePayload(new ThrottledByteSource((ByteSource) payload.getRawContent()));
+        } else {
+            try {
+                throttled = new InputStreamPayload(new ThrottledInputStream(payload.openStream()));
+            } catch (IOException e) {
+                throw propagate(e);
+            }
+        }
+        throttled.setContentMetadata(payload.getContentMetadata());
+        return throttled;
+    }
+
+    private final class ThrottledByteSource extends ByteSource {
+        private final ByteSource delegate;
+
+        ThrottledByteSource(ByteSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return new ThrottledInputStream(delegate.openStream());
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public ByteSource slice(long offset, long length) {
+            // keep the ranged reads of the delegate
+            return new ThrottledByteSource(delegate.slice(offset, length));
+        }
+    }
+
+    private final class ThrottledInputStream extends FilterInputStream {
+        ThrottledInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                acquireBytes(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            acquireBytes(n);
+            return n;
+        }
+    }
+}
@@ -13,11 +13,9 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.net.URI;
+import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
 import java.time.Clock;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -27,20 +25,21 @@ import java.util.Optional;
 import java.util.Properties;
 import java.util.ServiceLoader;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import com.bouncestorage.bounce.BlobStoreTarget;
 import com.bouncestorage.bounce.BounceBlobStore;
 import com.bouncestorage.bounce.PausableThreadPoolExecutor;
 import com.bouncestorage.bounce.Utils;
+import com.bouncestorage.bounce.admin.policy.WriteBackPolicy;
+import com.bouncestorage.bounce.utils.ChangeJournal;
+import com.bouncestorage.bounce.utils.DirtyKeyLog;
 import com.bouncestorage.bounce.utils.KeyStoreUtils;
 import com.bouncestorage.swiftproxy.SwiftProxy;
 import com.google.common.annotations.VisibleForTesting;
@@ -81,9 +80,17 @@ import ch.qos.logback.classic.Level;
 public class BounceApplication extends Application<BounceDropWizardConfiguration> {
     @VisibleForTesting
     public static final int BOUNCE_SCHEDULE_TIME = 21;
+    public static final String CRAWL_PREFETCH_DEPTH = "bounce.crawl-prefetch-depth";
+    public static final String CHANGE_JOURNAL_DIR = "bounce.change-journal.dir";
+    public static final String DIRTY_LOG_DIR = "bounce.dirty-log.dir";
+    public static final String DIRTY_LOG_SEGMENT_SIZE = "bounce.dirty-log.segment-size";
+    public static final String RECONCILE_MAX_PENDING = "bounce.reconcile-max-pending-keys";
+    private static final int DEFAULT_CRAWL_PREFETCH_DEPTH = 1;
+    private static final long DEFAULT_DIRTY_LOG_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final int DEFAULT_RECONCILE_MAX_PENDING = 100000;
 
     @VisibleForTesting
-    int scheduleCheckMinutes = 30;
+    int scheduleCheckMinutes = 1;
     @VisibleForTesting
     BounceService bounceService;
 
@@ -101,12 +108,17 @@ public class BounceApplication extends Application<BounceDropWizardConfiguration
     private Map<String, VirtualContainer> vContainerConfig = new HashMap<>();
     private final Pattern providerConfigPattern = Pattern.compile("(bounce.backend.\\d+).jclouds.provider");
     private final Pattern containerConfigPattern = Pattern.compile("(bounce.container.\\d+).tier.\\d+.\\w+");
+    private final Pattern throttleConfigPattern = Pattern.compile("bounce.backend.(\\d+).background.[\\w-]+");
     private Clock clock = Clock.systemUTC();
     private PausableThreadPoolExecutor backgroundReconcileTasks = new PausableThreadPoolExecutor(4);
     private PausableThreadPoolExecutor backgroundTasks = new PausableThreadPoolExecutor(4);
     private BounceStats bounceStats;
     private KeyStoreUtils keyStoreUtils;
-    private volatile Instant scheduledBounceRanAt = Instant.EPOCH;
+    private ChangeJournal changeJournal;
+    private DirtyKeyLog dirtyKeyLog;
+    private ReconcileDebouncer reconcileDebouncer;
+    private final Map<Integer, BackendThrottle> backendThrottles = new ConcurrentHashMap<>();
+    private BounceScheduler bounceScheduler;
     private boolean testAutoConfig;
 
     public BounceApplication() {
@@ -354,6 +366,14 @@ public class BounceApplication extends Application<BounceDropWizardConfiguration
         return virtualContainers.values();
     }
 
+    Collection<String> getContainerNames() {
+        return ImmutableList.copyOf(virtualContainers.keySet());
+    }
+
+    VirtualContainer getVirtualContainer(String container) {
+        return vContainerConfig.get(container);
+    }
+
     public BlobStore getBlobStore() {
         if (providers.isEmpty()) {
             return null;
@@ -394,6 +414,67 @@ public class BounceApplication extends Application<BounceDropWizardConfiguration
         return bounceStats;
     }
 
+    /**
+     * Number of list pages that crawls of the backends fetch ahead of their
+     * consumer, 0 disables prefetching.
+     */
+    public int getCrawlPrefetchDepth() {
+        return config.getInt(CRAWL_PREFETCH_DEPTH, DEFAULT_CRAWL_PREFETCH_DEPTH);
+    }
+
+    /**
+     * @return the journal of modified keys, or null if bounce.change-journal.dir
+     * is not configured
+     */
+    public synchronized ChangeJournal getChangeJournal() {
+        if (changeJournal == null) {
+            String dir = config.getString(CHANGE_JOURNAL_DIR);
+            if (!Strings.isNullOrEmpty(dir)) {
+                try {
+                    changeJournal = new ChangeJournal(Paths.get(dir));
+                } catch (IOException e) {
+                    throw propagate(e);
+                }
+            }
+        }
+        return changeJournal;
+    }
+
+    /**
+     * @return the local log of dirty keys that replaces the marker blobs of
+     * the write-back policies, or null if bounce.dirty-log.dir is not
+     * configured and marker blobs are used
+     */
+    public synchronized DirtyKeyLog getDirtyKeyLog() {
+        if (dirtyKeyLog == null) {
+            String dir = config.getString(DIRTY_LOG_DIR);
+            if (!Strings.isNullOrEmpty(dir)) {
+                try {
+                    dirtyKeyLog = new DirtyKeyLog(Paths.get(dir),
+                            config.getLong(DIRTY_LOG_SEGMENT_SIZE, DEFAULT_DIRTY_LOG_SEGMENT_SIZE));
+                } catch (IOException e) {
+                    throw propagate(e);
+                }
+            }
+        }
+        return dirtyKeyLog;
+    }
+
+    /** Return the throttle applied to background requests sent to the backend. */
+    public BackendThrottle getBackendThrottle(int id) {
+        return backendThrottles.computeIfAbsent(id, i -> {
+            Configuration c = config.subset(BounceBlobStore.STORE_PROPERTY + "." + i);
+            return new BackendThrottle(c.getLong(BackendThrottle.BYTES_PER_SECOND, 0),
+                    c.getLong(BackendThrottle.REQUESTS_PER_SECOND, 0));
+        });
+    }
+
+    private void updateBackendThrottle(int id) {
+        Configuration c = config.subset(BounceBlobStore.STORE_PROPERTY + "." + id);
+        getBackendThrottle(id).setLimits(c.getLong(BackendThrottle.BYTES_PER_SECOND, 0),
+                c.getLong(BackendThrottle.REQUESTS_PER_SECOND, 0));
+    }
+
     @VisibleForTesting
     public Map.Entry<String, BlobStore> locateBlobStore(String identity,
                                                         String container, String blob) {
@@ -569,56 +650,35 @@ public class BounceApplication extends Application<BounceDropWizardConfiguration
         testAutoConfig = config.containsKey("bounce.autoconfig-tiers") && config.getBoolean("bounce.autoconfig-tiers");
         registerConfigurationListener();
         bounceService = new BounceService(this);
+        // replay the dirty keys before serving requests
+        getDirtyKeyLog();
         initFromConfig();
+        rearmReconciles();
         bounceStats.start();
         startBounceScheduler();
     }
 
+    /** Schedule the write-back reconciles that were pending when the application stopped. */
     @VisibleForTesting
-    void startBounceScheduler() {
-        new Thread(() -> {
-            try {
-                scheduledBounce();
-            } catch (Exception e) {
-                e.printStackTrace();
+    void rearmReconciles() {
+        for (String container : getContainerNames()) {
+            BlobStore blobStore = getBlobStore(container);
+            if (blobStore instanceof WriteBackPolicy) {
+                executeBackgroundTask(BackendThrottle.background(() -> {
+                    ((WriteBackPolicy) blobStore).rearmReconciles(container);
+                    return null;
+                }));
             }
+        }
+    }
 
-            try {
-                Thread.sleep(scheduleCheckMinutes * 60 * 1000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }).start();
-    }
-
-    private void scheduledBounce() throws ExecutionException, InterruptedException {
-        Instant now = Instant.now(clock);
-        logger.debug("checking to see if we should bounce, time is now {}", now);
-        // make sure that it's more than an hour since we last ran
-        if (now.minus(Duration.ofHours(1)).isBefore(scheduledBounceRanAt)) {
-            logger.debug("last ran bounce at {}", scheduledBounceRanAt);
-            return;
-        }
-        Calendar calendar = new Calendar.Builder().setInstant(now.getEpochSecond() * 1000).build();
-        if (calendar.get(Calendar.HOUR_OF_DAY) == BOUNCE_SCHEDULE_TIME) {
-            scheduledBounceRanAt = now;
-            logger.debug("starting scheduled bounce at {}", now);
-            ForkJoinPool fjp = new ForkJoinPool(100);
-            List<BounceService.BounceTaskStatus> statuses = virtualContainers.keySet().stream()
-                    .peek(container -> logger.debug("bouncing {}", container))
-                    .map(container -> bounceService.bounce(container, fjp))
-                    .collect(Collectors.toList());
-            logger.debug("waiting for bounce to finish");
-            statuses.forEach(s -> {
-                try {
-                    s.future().get();
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
-                }
-            });
-            fjp.shutdown();
-            logger.debug("scheduled bounce done");
+    @VisibleForTesting
+    synchronized void startBounceScheduler() {
+        if (bounceScheduler != null) {
+            bounceScheduler.stop();
         }
+        bounceScheduler = new BounceScheduler(this, bounceService);
+        bounceScheduler.start(scheduleCheckMinutes, TimeUnit.MINUTES);
     }
 
     public void stop() throws Exception {
@@ -631,7 +691,23 @@ public class BounceApplication extends Application<BounceDropWizardConfiguration
         }
         backgroundTasks.shutdown();
         backgroundTasks.awaitTermination(30, TimeUnit.SECONDS);
+        synchronized (this) {
+            if (bounceScheduler != null) {
+                bounceScheduler.stop();
+            }
+        }
+        if (bounceService != null) {
+            bounceService.shutdown();
+        }
         bounceStats.shutdown();
+        synchronized (this) {
+            if (changeJournal != null) {
+                changeJournal.close();
+            }
+            if (dirtyKeyLog != null) {
+                dirtyKeyLog.close();
+            }
+        }
     }
 
     @VisibleForTesting
@@ -643,6 +719,8 @@ public class BounceApplication extends Application<BounceDropWizardConfiguration
             if (!evt.isBeforeUpdate()) {
                 if ((m = providerConfigPattern.matcher(name)).matches()) {
                     addProviderFromConfig(m.group(1), (String) evt.getPropertyValue());
+                } else if ((m = throttleConfigPattern.matcher(name)).matches()) {
+                    updateBackendThrottle(Integer.parseInt(m.group(1)));
                 } else if ((m = containerConfigPattern.matcher(name)).matches()) {
                     updateContainerFromConfig(m.group(1));
                 } else if (S3ProxyConstants.PROPERTY_ENDPOINT.equals(name)) {
@@ -731,7 +809,16 @@ public class BounceApplication extends Application<BounceDropWizardConfiguration
     }
 
     public <T> ScheduledFuture<T> executeBackgroundReconcileTask(Callable<T> task, long delay, TimeUnit unit) {
-        return backgroundReconcileTasks.schedule(task, delay, unit);
+        return backgroundReconcileTasks.schedule(BackendThrottle.background(task), delay, unit);
+    }
+
+    /** Return the table that coalesces the write-back reconciles of the keys. */
+    public synchronized ReconcileDebouncer getReconcileDebouncer() {
+        if (reconcileDebouncer == null) {
+            reconcileDebouncer = new ReconcileDebouncer(backgroundReconcileTasks,
+                    config.getInt(RECONCILE_MAX_PENDING, DEFAULT_RECONCILE_MAX_PENDING));
+        }
+        return reconcileDebouncer;
     }
 
     @VisibleForTesting
@@ -38,8 +38,14 @@ public final class BounceBlobsResource {
             BounceServiceRequest request)
             throws ExecutionException, InterruptedException {
         BounceService service = app.getBounceService();
-        BounceService.BounceTaskStatus status = request.abort ? service.status(request.name) :
-                service.bounce(request.name);
+        BounceService.BounceTaskStatus status;
+        if (request.abort) {
+            status = service.status(request.name);
+        } else if (request.plan) {
+            status = service.plan(request.name);
+        } else {
+            status = service.bounce(request.name, request.incremental);
+        }
         if (status == null) {
             return null;
         }
@@ -71,6 +77,8 @@ public final class BounceBlobsResource {
         private String name;
         private Boolean wait;
         private Boolean abort;
+        private Boolean incremental = false;
+        private Boolean plan = false;
 
         public BounceServiceRequest() {
             this(Optional.absent(), Optional.absent(), Optional.absent());
@@ -105,5 +113,21 @@ public final class BounceBlobsResource {
         public void setAbort(Boolean abort) {
             this.abort = abort;
         }
+
+        public Boolean isIncremental() {
+            return incremental;
+        }
+
+        public void setIncremental(Boolean incremental) {
+            this.incremental = incremental;
+        }
+
+        public Boolean isPlan() {
+            return plan;
+        }
+
+        public void setPlan(Boolean plan) {
+            this.plan = plan;
+        }
     }
 }
@@ -8,7 +8,7 @@ package com.bouncestorage.bounce.admin;
 import static java.util.Objects.requireNonNull;
 
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 import com.bouncestorage.bounce.BounceStorageMetadata;
 import com.bouncestorage.bounce.IForwardingBlobStore;
@@ -34,7 +34,7 @@ public abstract class BouncePolicy implements IForwardingBlobStore {
     protected Logger logger = LoggerFactory.getLogger(getClass());
     protected BounceApplication app;
     protected boolean takeOverInProcess;
-    protected ForkJoinTask<?> takeOverFuture;
+    protected Future<?> takeOverFuture;
 
     private BlobStore sourceBlobStore;
     private BlobStore destinationBlobStore;
@@ -68,12 +68,32 @@ public abstract class BouncePolicy implements IForwardingBlobStore {
         return getSource();
     }
 
+    protected int getCrawlPrefetchDepth() {
+        return app == null ? 0 : app.getCrawlPrefetchDepth();
+    }
+
     public abstract BounceResult reconcileObject(String container, BounceStorageMetadata sourceObject, StorageMetadata
             destinationObject);
 
+    /**
+     * Return the result that reconcileObject would have for the object,
+     * without modifying either tier. This is used to plan a bounce.
+     */
+    public BounceResult planObject(String container, BounceStorageMetadata sourceObject,
+                                   StorageMetadata destinationObject) {
+        return BounceResult.NO_OP;
+    }
+
     public void prepareBounce(String containerName) {
     }
 
+    /**
+     * Prepare to plan a bounce of the container, like prepareBounce but
+     * without changing the state that bounces work from.
+     */
+    public void preparePlan(String containerName) {
+    }
+
     public void takeOver(String containerName) {
     }
 
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts the periodic bounce of every virtual container during its bounce
+ * windows. A window opens at the times matched by a cron expression and
+ * lasts for a fixed duration; a bounce still running when its window closes
+ * is aborted and resumes from its checkpoint in the next window. Without
+ * bounce.bounce-checkpoint.dir an aborted bounce would start over, so bounces
+ * then run to completion and ignore their byte budget. At most
+ * bounce.schedule.max-concurrent-containers containers bounce at once, the
+ * ones with the highest priority first.
+ *
+ * <p>Every setting can be overridden per container under
+ * bounce.container.N.schedule.*:
+ * <ul>
+ * <li>cron, in the 5 field "minute hour day-of-month month day-of-week" format
+ * <li>duration, as an ISO-8601 duration
+ * <li>priority, larger values are bounced first
+ * <li>byte-budget, the number of bytes a bounce may copy or move per window,
+ * 0 for no limit
+ * </ul>
+ */
+public final class BounceScheduler {
+    public static final String SCHEDULE_PREFIX = "bounce.schedule";
+    public static final String CRON = "cron";
+    public static final String DURATION = "duration";
+    public static final String PRIORITY = "priority";
+    public static final String BYTE_BUDGET = "byte-budget";
+    public static final String MAX_CONCURRENT_CONTAINERS = "max-concurrent-containers";
+    @VisibleForTesting
+    static final String DEFAULT_CRON = "0 " + BounceApplication.BOUNCE_SCHEDULE_TIME + " * * *";
+    private static final String DEFAULT_DURATION = Duration.ofHours(1).toString();
+    private static final int DEFAULT_MAX_CONCURRENT_CONTAINERS = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final BounceApplication app;
+    private final BounceService service;
+    private final Map<String, Running> running = new HashMap<>();
+    private final Map<String, Instant> lastWindow = new HashMap<>();
+    private ExecutorService bounceExecutor;
+    private ScheduledExecutorService ticker;
+
+    public BounceScheduler(BounceApplication app, BounceService service) {
+        this.app = requireNonNull(app);
+        this.service = requireNonNull(service);
+    }
+
+    @VisibleForTesting
+    BounceScheduler(BounceApplication app, BounceService service, ExecutorService bounceExecutor) {
+        this(app, service);
+        this.bounceExecutor = requireNonNull(bounceExecutor);
+    }
+
+    public synchronized void start(long checkInterval, TimeUnit unit) {
+        int maxConcurrent = app.getConfiguration().getInt(SCHEDULE_PREFIX + "." + MAX_CONCURRENT_CONTAINERS,
+                DEFAULT_MAX_CONCURRENT_CONTAINERS);
+        if (bounceExecutor == null) {
+            bounceExecutor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                            .setNameFormat("scheduled-bounce-%d")
+                            .setDaemon(true)
+                            .build());
+        }
+        ticker = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("bounce-scheduler")
+                .setDaemon(true)
+                .build());
+        ticker.scheduleWithFixedDelay(() -> {
+            try {
+                tick();
+            } catch (Throwable e) {
+                logger.error("bounce scheduler error", e);
+            }
+        }, 0, checkInterval, unit);
+    }
+
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            bounceExecutor.shutdown();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void tick() {
+        Instant now = app.getClock().instant();
+        Configuration config = app.getConfiguration();
+        int maxConcurrent = config.getInt(SCHEDULE_PREFIX + "." + MAX_CONCURRENT_CONTAINERS,
+                DEFAULT_MAX_CONCURRENT_CONTAINERS);
+
+        running.values().removeIf(r -> r.status.future().isDone());
+        // without checkpoints an aborted bounce starts over and never gets past the window
+        if (service.hasCheckpoints()) {
+            running.forEach((container, r) -> {
+                if (!r.window.contains(r.windowStart, now)) {
+                    logger.info("bounce window of {} closed, aborting", container);
+                    r.status.abort();
+                }
+            });
+        }
+
+        List<Candidate> candidates = app.getContainerNames().stream()
+                .filter(container -> !running.containsKey(container))
+                .map(container -> new Candidate(container, getSchedule(container)))
+                .filter(c -> {
+                    c.windowStart = c.schedule.window.lastStart(now);
+                    return c.windowStart != null && !c.windowStart.equals(lastWindow.get(c.container));
+                })
+                .sorted(Comparator.comparingInt((Candidate c) -> -c.schedule.priority)
+                        .thenComparing(c -> c.container))
+                .collect(Collectors.toList());
+
+        for (Candidate candidate : candidates) {
+            if (running.size() >= maxConcurrent) {
+                logger.debug("{} containers bouncing, deferring the rest", running.size());
+                break;
+            }
+            logger.info("starting scheduled bounce of {}", candidate.container);
+            long byteBudget = candidate.schedule.byteBudget;
+            if (byteBudget > 0 && !service.hasCheckpoints()) {
+                logger.warn("ignoring the byte budget of {} without a checkpoint dir", candidate.container);
+                byteBudget = 0;
+            }
+            BounceService.BounceTaskStatus status = service.periodicBounce(candidate.container, bounceExecutor,
+                    byteBudget);
+            running.put(candidate.container, new Running(status, candidate.schedule.window, candidate.windowStart));
+            lastWindow.put(candidate.container, candidate.windowStart);
+        }
+    }
+
+    private Schedule getSchedule(String container) {
+        Configuration defaults = app.getConfiguration().subset(SCHEDULE_PREFIX);
+        VirtualContainer virtualContainer = app.getVirtualContainer(container);
+        Configuration c = virtualContainer == null ? defaults : app.getConfiguration().subset(
+                VirtualContainerResource.VIRTUAL_CONTAINER_PREFIX + "." + virtualContainer.getId() + ".schedule");
+        Window window = Window.parse(c.getString(CRON, defaults.getString(CRON, DEFAULT_CRON)),
+                Duration.parse(c.getString(DURATION, defaults.getString(DURATION, DEFAULT_DURATION))));
+        return new Schedule(window, c.getInt(PRIORITY, defaults.getInt(PRIORITY, 0)),
+                c.getLong(BYTE_BUDGET, defaults.getLong(BYTE_BUDGET, 0)));
+    }
+
+    private static final class Schedule {
+        private final Window window;
+        private final int priority;
+        private final long byteBudget;
+
+        Schedule(Window window, int priority, long byteBudget) {
+            this.window = window;
+            this.priority = priority;
+            this.byteBudget = byteBudget;
+        }
+    }
+
+    private static final class Candidate {
+        private final String container;
+        private final Schedule schedule;
+        private Instant windowStart;
+
+        Candidate(String container, Schedule schedule) {
+            this.container = container;
+            this.schedule = schedule;
+        }
+    }
+
+    private static final class Running {
+        private final BounceService.BounceTaskStatus status;
+        private final Window window;
+        private final Instant windowStart;
+
+        Running(BounceService.BounceTaskStatus status, Window window, Instant windowStart) {
+            this.status = status;
+            this.window = window;
+            this.windowStart = windowStart;
+        }
+    }
+
+    /** Recurring time window starting at the minutes matched by a cron expression. */
+    @VisibleForTesting
+    static final class Window {
+        private final BitSet minutes;
+        private final BitSet hours;
+        private final BitSet daysOfMonth;
+        private final BitSet months;
+        private final BitSet daysOfWeek;
+        private final boolean anyDayOfMonth;
+        private final boolean anyDayOfWeek;
+        private final Duration duration;
+        private final ZoneId zone;
+
+        private Window(List<String> fields, Duration duration, ZoneId zone) {
+            minutes = parseField(fields.get(0), 0, 59);
+            hours = parseField(fields.get(1), 0, 23);
+            daysOfMonth = parseField(fields.get(2), 1, 31);
+            months = parseField(fields.get(3), 1, 12);
+            daysOfWeek = parseField(fields.get(4), 0, 7);
+            // both 0 and 7 are sunday
+            if (daysOfWeek.get(7)) {
+                daysOfWeek.set(0);
+            }
+            anyDayOfMonth = fields.get(2).equals("*");
+            anyDayOfWeek = fields.get(4).equals("*");
+            this.duration = duration;
+            this.zone = zone;
+        }
+
+        static Window parse(String cron, Duration duration) {
+            return parse(cron, duration, ZoneId.systemDefault());
+        }
+
+        static Window parse(String cron, Duration duration, ZoneId zone) {
+            List<String> fields = Splitter.on(' ').omitEmptyStrings().trimResults().splitToList(cron);
+            checkArgument(fields.size() == 5, "cron expression must have 5 fields: %s", cron);
+            checkArgument(!duration.isNegative() && !duration.isZero(), "window duration must be positive");
+            return new Window(fields, duration, zone);
+        }
+
+        private static BitSet parseField(String field, int min, int max) {
+            BitSet bits = new BitSet(max + 1);
+            for (String part : Splitter.on(',').split(field)) {
+                int step = 1;
+                int slash = part.indexOf('/');
+                if (slash >= 0) {
+                    step = Integer.parseInt(part.substring(slash + 1));
+                    part = part.substring(0, slash);
+                }
+                int start;
+                int end;
+                if (part.equals("*")) {
+                    start = min;
+                    end = max;
+                } else if (part.contains("-")) {
+                    start = Integer.parseInt(part.substring(0, part.indexOf('-')));
+                    end = Integer.parseInt(part.substring(part.indexOf('-') + 1));
+                } else {
+                    start = Integer.parseInt(part);
+                    end = slash >= 0 ? max : start;
+                }
+                checkArgument(start >= min && end <= max && start <= end && step > 0,
+                        "invalid cron field: %s", field);
+                for (int i = start; i <= end; i += step) {
+                    bits.set(i);
+                }
+            }
+            return bits;
+        }
+
+        boolean matches(ZonedDateTime time) {
+            boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+            boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+            boolean day;
+            if (anyDayOfMonth || anyDayOfWeek) {
+                day = dayOfMonth && dayOfWeek;
+            } else {
+                // like cron, either day field matches when both are restricted
+                day = dayOfMonth || dayOfWeek;
+            }
+            return day && minutes.get(time.getMinute()) && hours.get(time.getHour()) &&
+                    months.get(time.getMonthValue());
+        }
+
+        /** Return the start of the window that contains the instant, or null. */
+        Instant lastStart(Instant now) {
+            ZonedDateTime time = now.atZone(zone).truncatedTo(ChronoUnit.MINUTES);
+            long span = Math.max(1, duration.toMinutes());
+            for (long i = 0; i < span; i++) {
+                ZonedDateTime start = time.minusMinutes(i);
+                if (matches(start) && start.toInstant().plus(duration).isAfter(now)) {
+                    return start.toInstant();
+                }
+            }
+            return null;
+        }
+
+        boolean contains(Instant start, Instant now) {
+            return !now.isBefore(start) && now.isBefore(start.plus(duration));
+        }
+    }
+}
@@ -7,31 +7,49 @@ package com.bouncestorage.bounce.admin;
 
 import static java.util.Objects.requireNonNull;
 
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Spliterator;
-import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.StreamSupport;
+import java.util.stream.Collectors;
 
 import com.bouncestorage.bounce.BlobStoreTarget;
 import com.bouncestorage.bounce.BounceStorageMetadata;
 import com.bouncestorage.bounce.Utils;
 import com.bouncestorage.bounce.admin.BouncePolicy.BounceResult;
 import com.bouncestorage.bounce.admin.policy.WriteBackPolicy;
+import com.bouncestorage.bounce.utils.BounceCheckpoints;
+import com.bouncestorage.bounce.utils.ChangeJournal;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.jclouds.blobstore.BlobStore;
@@ -41,16 +59,56 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public final class BounceService {
+    public static final String SHARD_COUNT = "bounce.bounce-shards";
+    public static final String SHARD_SAMPLE_INTERVAL = "bounce.bounce-shard-sample-interval";
+    public static final String FULL_BOUNCE_INTERVAL = "bounce.full-bounce-interval";
+    public static final String CHECKPOINT_DIR = "bounce.bounce-checkpoint.dir";
+    public static final String CHECKPOINT_INTERVAL = "bounce.bounce-checkpoint-interval";
+    public static final String RECONCILE_THREADS = "bounce.reconcile-threads";
+    public static final String RECONCILE_QUEUE_SIZE = "bounce.reconcile-queue-size";
+    public static final String RECONCILE_CONTAINER_CONCURRENCY = "bounce.reconcile-container-concurrency";
+    private static final int DEFAULT_SHARD_COUNT = 1;
+    private static final long DEFAULT_SHARD_SAMPLE_INTERVAL = 1000;
+    private static final long DEFAULT_CHECKPOINT_INTERVAL = 30;
+    private static final int DEFAULT_RECONCILE_THREADS = 16;
+    private static final int DEFAULT_RECONCILE_QUEUE_SIZE = 64;
+    private static final String DEFAULT_FULL_BOUNCE_INTERVAL = Duration.ofDays(7).toString();
+
     private Logger logger = LoggerFactory.getLogger(getClass());
     private Map<String, BounceTaskStatus> bounceStatus = new HashMap<>();
+    private Map<String, Instant> lastFullBounce = new HashMap<>();
+    private Map<String, Long> lastObjectCount = new HashMap<>();
     private ExecutorService executor =
             new ThreadPoolExecutor(1, 1, 0, TimeUnit.DAYS, new LinkedBlockingQueue<>());
     private final BounceApplication app;
+    private final KeyspaceSharder sharder;
+    private final BounceCheckpoints checkpoints;
+    private final long checkpointIntervalNanos;
+    private final ReconcilePipeline pipeline;
 
     private Clock clock = Clock.systemUTC();
 
     public BounceService(BounceApplication app) {
         this.app = requireNonNull(app);
+        sharder = new KeyspaceSharder(
+                app.getConfiguration().getInt(SHARD_COUNT, DEFAULT_SHARD_COUNT),
+                app.getConfiguration().getLong(SHARD_SAMPLE_INTERVAL, DEFAULT_SHARD_SAMPLE_INTERVAL));
+        String checkpointDir = app.getConfiguration().getString(CHECKPOINT_DIR);
+        if (Strings.isNullOrEmpty(checkpointDir)) {
+            checkpoints = null;
+        } else {
+            try {
+                checkpoints = new BounceCheckpoints(Paths.get(checkpointDir));
+            } catch (IOException e) {
+                throw propagate(e);
+            }
+        }
+        checkpointIntervalNanos = TimeUnit.SECONDS.toNanos(
+                app.getConfiguration().getLong(CHECKPOINT_INTERVAL, DEFAULT_CHECKPOINT_INTERVAL));
+        int reconcileThreads = app.getConfiguration().getInt(RECONCILE_THREADS, DEFAULT_RECONCILE_THREADS);
+        pipeline = new ReconcilePipeline(reconcileThreads,
+                app.getConfiguration().getInt(RECONCILE_QUEUE_SIZE, DEFAULT_RECONCILE_QUEUE_SIZE),
+                app.getConfiguration().getInt(RECONCILE_CONTAINER_CONCURRENCY, reconcileThreads));
     }
 
     @VisibleForTesting
@@ -58,18 +116,98 @@ public final class BounceService {
         return bounce(container, executor);
     }
 
+    public synchronized BounceTaskStatus bounce(String container, boolean incremental) {
+        return bounce(container, executor, incremental);
+    }
+
     @VisibleForTesting
     public synchronized BounceTaskStatus bounce(String container, ExecutorService exe) {
+        return bounce(container, exe, false);
+    }
+
+    /**
+     * Bounce the container, an incremental bounce only reconciles the keys
+     * recorded in the change journal since the previous bounce and falls back
+     * to a full crawl if the journal is not configured.
+     */
+    public synchronized BounceTaskStatus bounce(String container, ExecutorService exe, boolean incremental) {
+        return bounce(container, exe, incremental, 0);
+    }
+
+    /**
+     * Bounce the container, stopping the bounce once it copied or moved
+     * byteBudget bytes. A bounce stopped by its budget, like an aborted
+     * one, resumes from its checkpoint.
+     */
+    public synchronized BounceTaskStatus bounce(String container, ExecutorService exe, boolean incremental,
+                                                long byteBudget) {
+        BounceTaskStatus status = bounceStatus.get(container);
+        if (status == null || status.done()) {
+            status = new BounceTaskStatus();
+            status.container = container;
+            status.byteBudget = byteBudget;
+            status.incremental = incremental && app.getChangeJournal() != null;
+            status.expectedObjectCount = lastObjectCount.getOrDefault(container, 0L);
+            status.future = exe.submit(new BounceTask(container, status));
+            bounceStatus.put(container, status);
+        }
+        return status;
+    }
+
+    public synchronized BounceTaskStatus plan(String container) {
+        return plan(container, executor);
+    }
+
+    /**
+     * Plan a bounce of the container: crawl it like a full bounce, but only
+     * count the objects and bytes that every policy would copy, move, link or
+     * remove. Nothing is modified, checkpointed or taken from the change
+     * journal.
+     */
+    public synchronized BounceTaskStatus plan(String container, ExecutorService exe) {
         BounceTaskStatus status = bounceStatus.get(container);
         if (status == null || status.done()) {
             status = new BounceTaskStatus();
             status.container = container;
+            Map<BounceResult, PlannedResult> planned = new EnumMap<>(BounceResult.class);
+            for (BounceResult result : BounceResult.values()) {
+                planned.put(result, new PlannedResult());
+            }
+            status.planned = planned;
+            status.expectedObjectCount = lastObjectCount.getOrDefault(container, 0L);
             status.future = exe.submit(new BounceTask(container, status));
             bounceStatus.put(container, status);
         }
         return status;
     }
 
+    /**
+     * Bounce the container incrementally, unless it was not fully crawled
+     * within bounce.full-bounce-interval, in which case the full crawl
+     * verifies that nothing was missed by the change journal.
+     */
+    public synchronized BounceTaskStatus periodicBounce(String container, ExecutorService exe) {
+        return periodicBounce(container, exe, 0);
+    }
+
+    public synchronized BounceTaskStatus periodicBounce(String container, ExecutorService exe, long byteBudget) {
+        Duration interval = Duration.parse(app.getConfiguration().getString(FULL_BOUNCE_INTERVAL,
+                DEFAULT_FULL_BOUNCE_INTERVAL));
+        Instant last = lastFullBounce.get(container);
+        boolean incremental = last != null && last.plus(interval).isAfter(clock.instant());
+        return bounce(container, exe, incremental, byteBudget);
+    }
+
+    private synchronized void fullBounceDone(String container, long objectCount) {
+        lastFullBounce.put(container, clock.instant());
+        lastObjectCount.put(container, objectCount);
+    }
+
+    /** Return whether an interrupted full bounce resumes from its checkpoint instead of starting over. */
+    public boolean hasCheckpoints() {
+        return checkpoints != null;
+    }
+
     synchronized BounceTaskStatus status(String container) {
         return bounceStatus.get(container);
     }
@@ -79,6 +217,10 @@ public final class BounceService {
         return bounceStatus.values();
     }
 
+    public void shutdown() {
+        pipeline.shutdown();
+    }
+
     public Clock getClock() {
         return clock;
     }
@@ -91,15 +233,13 @@ public final class BounceService {
     class BounceTask implements Runnable {
         private String container;
         private BounceTaskStatus status;
-        private ContainerStats sourceStats;
-        private ContainerStats destinationStats;
         private Throwable initBackTrace;
+        private final AtomicLong lastCheckpoint = new AtomicLong(System.nanoTime());
+        private final TierStats uncounted = new TierStats();
 
         BounceTask(String container, BounceTaskStatus status) {
             this.container = requireNonNull(container);
             this.status = requireNonNull(status);
-            sourceStats = new ContainerStats();
-            destinationStats = new ContainerStats();
             initBackTrace = new RuntimeException();
         }
 
@@ -108,12 +248,43 @@ public final class BounceService {
             try {
                 BlobStore blobStore = app.getBlobStore(container);
                 BouncePolicy policy = (BouncePolicy) requireNonNull(blobStore);
-                processPolicy(policy);
-                logStats(policy.getSource(), sourceStats);
-                if (policy.getDestination() instanceof BouncePolicy) {
-                    processPolicy((BouncePolicy) policy.getDestination());
-                } else if (policy.getDestination() != null) {
-                    logStats(policy.getDestination(), destinationStats);
+                ChangeJournal journal = app.getChangeJournal();
+                // a full crawl also reconciles every journaled key
+                ChangeJournal.Batch batch = journal == null || status.isPlan() ? null :
+                        journal.takeBatch(container);
+                if (status.incremental && isIncrementalSafe(policy)) {
+                    processJournal(policy, batch);
+                } else {
+                    status.incremental = false;
+                    processPolicy(policy, 0);
+                    if (!status.isPlan()) {
+                        logStats(policy.getSource(), status.tierStats.get(0));
+                    }
+                    if (policy.getDestination() instanceof BouncePolicy) {
+                        BouncePolicy destination = (BouncePolicy) policy.getDestination();
+                        if (status.aborted) {
+                            // the next tier only runs after a complete crawl of this one
+                            logger.info("bounce of {} aborted, skipping the next tier", container);
+                        } else {
+                            processPolicy(destination, 1);
+                            if (!status.isPlan()) {
+                                logStats(destination.getSource(), status.tierStats.get(1));
+                                logStats(destination.getDestination(), status.tierStats.get(2));
+                            }
+                        }
+                    } else if (policy.getDestination() != null && !status.isPlan()) {
+                        logStats(policy.getDestination(), status.tierStats.get(1));
+                    }
+                }
+                if (!status.aborted && !status.isPlan()) {
+                    // a resumed crawl did not revisit the keys changed since it was interrupted
+                    if (batch != null && !status.resumed && status.errorObjectCount.get() == 0) {
+                        batch.commit();
+                    }
+                    if (!status.incremental) {
+                        clearCheckpoints();
+                        fullBounceDone(container, status.getTotalObjectCount());
+                    }
                 }
             } catch (Throwable e) {
                 e.initCause(initBackTrace);
@@ -125,22 +296,27 @@ public final class BounceService {
             }
         }
 
-        private void logStats(BlobStore blobStore, ContainerStats stats) {
+        private void logStats(BlobStore blobStore, TierStats stats) {
             String targetContainer = container;
             if (blobStore instanceof BlobStoreTarget) {
                 targetContainer = ((BlobStoreTarget) blobStore).mapContainer(null);
             }
-            app.getBounceStats().logObjectStoreStats(app.getBlobStoreId(blobStore), targetContainer, stats.totalSize,
-                    stats.objectCount);
+            app.getBounceStats().logObjectStoreStats(app.getBlobStoreId(blobStore), targetContainer,
+                    stats.getTotalSize(), stats.getObjectCount());
         }
 
         class ReconcileIterator implements Iterator<Pair<BounceStorageMetadata, StorageMetadata>> {
             PeekingIterator<StorageMetadata> srcIter;
             PeekingIterator<StorageMetadata> destIter;
+            KeyspaceSharder.Sampler sampler;
+            BounceCheckpoints.Watermark watermark;
 
-            ReconcileIterator(PeekingIterator<StorageMetadata> srcIter, PeekingIterator<StorageMetadata> destIter) {
+            ReconcileIterator(PeekingIterator<StorageMetadata> srcIter, PeekingIterator<StorageMetadata> destIter,
+                              KeyspaceSharder.Sampler sampler, BounceCheckpoints.Watermark watermark) {
                 this.srcIter = requireNonNull(srcIter);
                 this.destIter = requireNonNull(destIter);
+                this.sampler = requireNonNull(sampler);
+                this.watermark = requireNonNull(watermark);
             }
 
             @Override
@@ -173,39 +349,240 @@ public final class BounceService {
                         srcIter.next();
                     }
                 }
+                String name = src != null ? src.getName() : dest.getName();
+                sampler.offer(name);
+                watermark.begin(name);
                 return Pair.of(src, dest);
             }
         }
 
-        private void processPolicy(BouncePolicy policy) {
+        private void processPolicy(BouncePolicy policy, int tier) {
             logger.info("processing policy {} {}", policy.getClass(), status.container);
 
+            // every tier of a container has its own keyspace
+            String keyspace = getKeyspace(tier);
+            List<BounceCheckpoints.Range> ranges = useCheckpoints() ? checkpoints.load(keyspace) : null;
+            boolean resumed = ranges != null;
+            if (resumed) {
+                logger.info("resuming bounce of {} from checkpoint", keyspace);
+                status.resumed = true;
+            } else {
+                ranges = sharder.getShards(keyspace).stream()
+                        .map(r -> BounceCheckpoints.Range.create(r.getStartMarker(), r.getEndMarker(), null, false))
+                        .collect(Collectors.toList());
+            }
+            BounceCheckpoints.Progress progress = new BounceCheckpoints.Progress(ranges);
+            KeyspaceSharder.Sampler sampler = sharder.newSampler(keyspace);
+            logger.debug("crawling {} in {} shards", keyspace, ranges.size());
+
+            if (status.isPlan()) {
+                policy.preparePlan(container);
+            } else {
+                policy.prepareBounce(container);
+            }
+            processRanges(policy, tier, keyspace, progress, sampler);
+            saveCheckpoint(keyspace, progress);
+            // a resumed crawl only sampled part of the keyspace
+            if (!status.aborted && !resumed && !status.isPlan()) {
+                sampler.finish();
+            }
+        }
+
+        /**
+         * Crawl the ranges that are not done yet, each on its own thread, since
+         * the crawls block on listings and on the reconcile pipeline.
+         */
+        private void processRanges(BouncePolicy policy, int tier, String keyspace,
+                                   BounceCheckpoints.Progress progress, KeyspaceSharder.Sampler sampler) {
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < progress.getRanges().size(); i++) {
+                if (!progress.getRanges().get(i).isDone()) {
+                    pending.add(i);
+                }
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            ExecutorService shardExecutor = Executors.newFixedThreadPool(pending.size(),
+                    new ThreadFactoryBuilder().setNameFormat("bounce-shard-" + container + "-%d")
+                            .setDaemon(true).build());
+            List<Future<?>> futures = new ArrayList<>(pending.size());
+            try {
+                for (int index : pending) {
+                    futures.add(shardExecutor.submit(() -> BackendThrottle.runInBackground(
+                            () -> processRange(policy, tier, keyspace, progress, index, sampler))));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                status.abort();
+                throw propagate(e);
+            } catch (ExecutionException e) {
+                throw propagate(e.getCause());
+            } finally {
+                futures.forEach(future -> future.cancel(true));
+                shardExecutor.shutdown();
+            }
+        }
+
+        private void processRange(BouncePolicy policy, int tier, String keyspace,
+                                  BounceCheckpoints.Progress progress, int index, KeyspaceSharder.Sampler sampler) {
+            BounceCheckpoints.Range range = progress.getRanges().get(index);
             ListContainerOptions options = new ListContainerOptions().recursive();
+            String startMarker = range.getMarker() != null ? range.getMarker() : range.getStartMarker();
+            if (startMarker != null) {
+                options.afterMarker(startMarker);
+            }
 
+            int prefetchDepth = app.getCrawlPrefetchDepth();
             PeekingIterator<StorageMetadata> destinationIterator = Iterators.peekingIterator(
-                    Utils.crawlBlobStore(policy.getDestination(), container, options).iterator());
+                    Utils.crawlBlobStore(policy.getDestination(), container, options, range.getEndMarker(),
+                            prefetchDepth).iterator());
             PeekingIterator<StorageMetadata> sourceIterator = Iterators.peekingIterator(
-                    Utils.crawlBlobStore(policy, container, options).iterator());
+                    Utils.crawlBlobStore(policy, container, options, range.getEndMarker(), prefetchDepth)
+                            .iterator());
+
+            BounceCheckpoints.Watermark watermark = new BounceCheckpoints.Watermark(range.getMarker());
+            ReconcileIterator iterator = new ReconcileIterator(sourceIterator, destinationIterator, sampler,
+                    watermark);
+            ReconcilePipeline.Batch inflight = pipeline.newBatch(container);
+            try {
+                while (iterator.hasNext()) {
+                    Pair<BounceStorageMetadata, StorageMetadata> p = iterator.next();
+                    BounceStorageMetadata sourceObject = p.getLeft();
+                    StorageMetadata destinationObject = p.getRight();
+                    String name = sourceObject != null ? sourceObject.getName() : destinationObject.getName();
+                    inflight.submit(() -> {
+                        if (destinationObject == null || !WriteBackPolicy.isSwiftSegmentBlob(name)) {
+                            reconcileObject(policy, tier, sourceObject, destinationObject);
+                        }
+                        watermark.complete(name);
+                        progress.update(index, watermark.getMarker(), false);
+                        maybeSaveCheckpoint(keyspace, progress);
+                    });
+                }
+            } finally {
+                inflight.await();
+            }
+            progress.update(index, watermark.getMarker(), !status.aborted);
+        }
 
-            policy.prepareBounce(container);
-            StreamSupport.stream(Spliterators.spliteratorUnknownSize(
-                    new ReconcileIterator(sourceIterator, destinationIterator), Spliterator.CONCURRENT), true)
-                    .filter(p -> p.getRight() == null || !WriteBackPolicy.isSwiftSegmentBlob(p.getRight().getName()))
-                    .forEach((p) -> {
-                        BounceStorageMetadata sourceObject = p.getLeft();
-                        StorageMetadata destinationObject = p.getRight();
+        private String getKeyspace(int tier) {
+            return container + "/" + tier;
+        }
 
-                        reconcileObject(policy, sourceObject, destinationObject);
+        private void maybeSaveCheckpoint(String keyspace, BounceCheckpoints.Progress progress) {
+            long last = lastCheckpoint.get();
+            long now = System.nanoTime();
+            if (now - last >= checkpointIntervalNanos && lastCheckpoint.compareAndSet(last, now)) {
+                saveCheckpoint(keyspace, progress);
+            }
+        }
+
+        private boolean useCheckpoints() {
+            return checkpoints != null && !status.isPlan();
+        }
+
+        private void saveCheckpoint(String keyspace, BounceCheckpoints.Progress progress) {
+            if (useCheckpoints()) {
+                checkpoints.save(keyspace, progress.getRanges());
+            }
+        }
+
+        private void clearCheckpoints() {
+            if (checkpoints != null) {
+                checkpoints.clear(getKeyspace(0));
+                checkpoints.clear(getKeyspace(1));
+            }
+        }
+
+        /** Return whether every tier of the policy can be bounced from the journal alone. */
+        private boolean isIncrementalSafe(BouncePolicy policy) {
+            if (!(policy instanceof WriteBackPolicy)) {
+                return false;
+            }
+            for (BlobStore tier = policy; tier instanceof WriteBackPolicy;
+                 tier = ((WriteBackPolicy) tier).getDestination()) {
+                if (!((WriteBackPolicy) tier).isIncrementalSafe()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void processJournal(BouncePolicy policy, ChangeJournal.Batch batch) {
+            logger.info("incremental bounce of {} keys in {}", batch.getKeys().size(), container);
+            int tiers = 0;
+            for (BlobStore tier = policy; tier instanceof WriteBackPolicy;
+                 tier = ((WriteBackPolicy) tier).getDestination()) {
+                tiers++;
+            }
+            status.expectedObjectCount = (long) batch.getKeys().size() * tiers;
+            ReconcilePipeline.Batch inflight = pipeline.newBatch(container);
+            try {
+                for (String key : batch.getKeys()) {
+                    if (status.aborted) {
+                        break;
+                    }
+                    inflight.submit(() -> {
+                        // changes may need to be reconciled in every write-back tier
+                        for (BlobStore tier = policy; tier instanceof WriteBackPolicy;
+                             tier = ((WriteBackPolicy) tier).getDestination()) {
+                            reconcileKey((WriteBackPolicy) tier, key);
+                        }
                     });
+                }
+            } finally {
+                inflight.await();
+            }
+        }
+
+        private void reconcileKey(WriteBackPolicy policy, String key) {
+            try {
+                status.totalObjectCount.getAndIncrement();
+                long startNanos = System.nanoTime();
+                WriteBackPolicy.ObjectState state = policy.lookupObject(container, key);
+                if (state == null) {
+                    // already gone from both tiers
+                    status.recordResult(BounceResult.NO_OP, System.nanoTime() - startNanos, 0);
+                    adjustCount(BounceResult.NO_OP);
+                    return;
+                }
+                BounceResult result = policy.reconcileObject(container, state.getSource(),
+                        state.getDestination());
+                status.recordResult(result, System.nanoTime() - startNanos, state.getSize());
+                adjustCount(result);
+                if (state.getSource() != null && (result == BounceResult.COPY || result == BounceResult.MOVE)) {
+                    chargeBudget(state.getSource().getSize());
+                }
+            } catch (Throwable e) {
+                logger.error(String.format("Failed to reconcile object %s in %s", key, container), e);
+                status.errorObjectCount.getAndIncrement();
+            }
         }
 
-        private void reconcileObject(BouncePolicy policy, BounceStorageMetadata source,
-                                             StorageMetadata destination) {
+        private void reconcileObject(BouncePolicy policy, int tier, BounceStorageMetadata source,
+                                     StorageMetadata destination) {
             try {
                 status.totalObjectCount.getAndIncrement();
+                if (status.isPlan()) {
+                    planObject(policy, source, destination);
+                    return;
+                }
+                long startNanos = System.nanoTime();
                 BounceResult result = policy.reconcileObject(container, source, destination);
-                adjustContainerStats(result, source, destination);
+                status.recordResult(result, System.nanoTime() - startNanos,
+                        source != null ? source.getSize() : destination.getSize());
+                // a destination policy counts its objects when its own tier is processed
+                TierStats destinationStats = policy.getDestination() instanceof BouncePolicy ? uncounted :
+                        status.tierStats.get(tier + 1);
+                adjustTierStats(result, status.tierStats.get(tier), destinationStats, source, destination);
                 adjustCount(result);
+                if (source != null && (result == BounceResult.COPY || result == BounceResult.MOVE)) {
+                    chargeBudget(source.getSize());
+                }
             } catch (Throwable e) {
                 logger.error(String.format("Failed to reconcile object %s, %s in %s",
                         source, destination, container), e);
@@ -213,30 +590,44 @@ public final class BounceService {
             }
         }
 
-        private void adjustContainerStats(BounceResult result, BounceStorageMetadata source, StorageMetadata
-                destination) {
+        private void planObject(BouncePolicy policy, BounceStorageMetadata source, StorageMetadata destination) {
+            BounceResult result = policy.planObject(container, source, destination);
+            long size = source != null ? source.getSize() : destination.getSize();
+            PlannedResult planned = status.planned.get(result);
+            planned.objectCount.getAndIncrement();
+            planned.byteCount.getAndAdd(size);
+        }
+
+        private void chargeBudget(long size) {
+            long bytes = status.bouncedByteCount.addAndGet(size);
+            if (status.byteBudget > 0 && bytes >= status.byteBudget && !status.aborted) {
+                logger.info("bounce of {} used its budget of {} bytes", container, status.byteBudget);
+                status.budgetExhausted = true;
+                status.abort();
+            }
+        }
+
+        private void adjustTierStats(BounceResult result, TierStats sourceStats, TierStats destinationStats,
+                                     BounceStorageMetadata source, StorageMetadata destination) {
             if (source != null && result != BounceResult.REMOVE) {
                 // We may remove the object from the source during a migration operation
-                sourceStats.objectCount += 1;
                 switch (result) {
                     case COPY:
-                        destinationStats.objectCount += 1;
-                        destinationStats.totalSize += source.getSize();
-                        sourceStats.totalSize += source.getSize();
+                        sourceStats.add(source.getSize());
+                        destinationStats.add(source.getSize());
                         break;
                     case NO_OP:
                         if (source.getRegions().equals(BounceStorageMetadata.FAR_ONLY)) {
-                            sourceStats.totalSize += source.getLinkSize();
+                            sourceStats.add(source.getLinkSize());
                         } else {
-                            sourceStats.totalSize += source.getSize();
+                            sourceStats.add(source.getSize());
                         }
                         break;
                     case MOVE:
                     case LINK:
                         // TODO: we should look up the link size
-                        sourceStats.totalSize += 0;
-                        destinationStats.objectCount += 1;
-                        destinationStats.totalSize += source.getSize();
+                        sourceStats.add(0);
+                        destinationStats.add(source.getSize());
                         break;
                     default:
                         break;
@@ -244,8 +635,7 @@ public final class BounceService {
             }
             if (destination != null && source == null && result != BounceResult.REMOVE) {
                 // This can only be a NO_OP at this point (COPY, LINK, or MOVE would be taken care of above.
-                destinationStats.objectCount += 1;
-                destinationStats.totalSize += destination.getSize();
+                destinationStats.add(destination.getSize());
             }
         }
 
@@ -286,16 +676,66 @@ public final class BounceService {
         @JsonProperty
         final AtomicLong linkedObjectCount = new AtomicLong();
         @JsonProperty
+        final AtomicLong bouncedByteCount = new AtomicLong();
+        @JsonProperty
+        final AtomicLong copiedByteCount = new AtomicLong();
+        @JsonProperty
+        final AtomicLong movedByteCount = new AtomicLong();
+        @JsonProperty
+        final AtomicLong removedByteCount = new AtomicLong();
+        @JsonProperty
+        volatile long expectedObjectCount;
+        @JsonProperty
         final Date startTime;
         @JsonProperty
         volatile Date endTime;
         @JsonProperty
         volatile boolean aborted;
+        @JsonProperty
+        volatile boolean incremental;
+        @JsonProperty
+        volatile boolean resumed;
+        @JsonProperty
+        volatile long byteBudget;
+        @JsonProperty
+        volatile boolean budgetExhausted;
+        @JsonProperty
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        volatile Map<BounceResult, PlannedResult> planned;
+        // the first tier of a container and its destinations
+        @JsonProperty
+        final List<TierStats> tierStats = ImmutableList.of(new TierStats(), new TierStats(), new TierStats());
 
         private Future<?> future;
+        private final Meter objectRate = new Meter();
+        private final Meter byteRate = new Meter();
+        private final Map<BounceResult, Timer> latencies = new EnumMap<>(BounceResult.class);
 
         public BounceTaskStatus() {
             startTime = new Date();
+            for (BounceResult result : BounceResult.values()) {
+                latencies.put(result, new Timer());
+            }
+        }
+
+        void recordResult(BounceResult result, long nanos, long size) {
+            latencies.get(result).update(nanos, TimeUnit.NANOSECONDS);
+            objectRate.mark();
+            switch (result) {
+                case COPY:
+                    copiedByteCount.getAndAdd(size);
+                    byteRate.mark(size);
+                    break;
+                case MOVE:
+                    movedByteCount.getAndAdd(size);
+                    byteRate.mark(size);
+                    break;
+                case REMOVE:
+                    removedByteCount.getAndAdd(size);
+                    break;
+                default:
+                    break;
+            }
         }
 
         public Future<?> future() {
@@ -347,14 +787,142 @@ public final class BounceService {
             }
         }
 
+        public boolean isIncremental() {
+            return incremental;
+        }
+
+        public boolean isResumed() {
+            return resumed;
+        }
+
+        public long getBouncedByteCount() {
+            return bouncedByteCount.get();
+        }
+
+        public boolean isBudgetExhausted() {
+            return budgetExhausted;
+        }
+
+        public long getCopiedByteCount() {
+            return copiedByteCount.get();
+        }
+
+        public long getMovedByteCount() {
+            return movedByteCount.get();
+        }
+
+        public long getRemovedByteCount() {
+            return removedByteCount.get();
+        }
+
+        /** Return the number of objects this bounce is expected to reconcile, or 0 if unknown. */
+        public long getExpectedObjectCount() {
+            return expectedObjectCount;
+        }
+
+        /** Return the rate of reconciled objects over the last minute. */
+        public double getObjectsPerSecond() {
+            return objectRate.getOneMinuteRate();
+        }
+
+        /** Return the rate of copied and moved bytes over the last minute. */
+        public double getBytesPerSecond() {
+            return byteRate.getOneMinuteRate();
+        }
+
+        public Map<BounceResult, LatencySummary> getLatencies() {
+            Map<BounceResult, LatencySummary> summaries = new EnumMap<>(BounceResult.class);
+            latencies.forEach((result, timer) -> summaries.put(result, new LatencySummary(timer)));
+            return summaries;
+        }
+
+        /**
+         * Return the estimated number of seconds until the bounce completes,
+         * extrapolated from the objects reconciled by the previous bounce of
+         * the container, or null if unknown.
+         */
+        public Long getEstimatedSecondsRemaining() {
+            if (future != null && future.isDone()) {
+                return 0L;
+            }
+            long remaining = expectedObjectCount - totalObjectCount.get();
+            double rate = objectRate.getOneMinuteRate();
+            if (rate <= 0) {
+                // the rolling rate is only computed after a few seconds
+                rate = objectRate.getMeanRate();
+            }
+            if (expectedObjectCount <= 0 || rate <= 0) {
+                return null;
+            }
+            return (long) Math.ceil(Math.max(remaining, 0) / rate);
+        }
+
+        /** Return the objects found in each tier, the first tier first. */
+        public List<TierStats> getTierStats() {
+            return tierStats;
+        }
+
+        public boolean isPlan() {
+            return planned != null;
+        }
+
+        /** Return the objects and bytes a planned bounce would reconcile to the result. */
+        public PlannedResult getPlannedResult(BounceResult result) {
+            return planned.get(result);
+        }
+
         public void abort() {
             aborted = true;
         }
     }
 
-    public static final class ContainerStats {
-        // Can represent up to ~9 exabytes as bytes
-        long totalSize;
-        long objectCount;
+    public static final class LatencySummary {
+        @JsonProperty
+        private final long count;
+        @JsonProperty
+        private final double medianMillis;
+        @JsonProperty
+        private final double p95Millis;
+        @JsonProperty
+        private final double p99Millis;
+
+        LatencySummary(Timer timer) {
+            Snapshot snapshot = timer.getSnapshot();
+            count = timer.getCount();
+            medianMillis = snapshot.getMedian() / TimeUnit.MILLISECONDS.toNanos(1);
+            p95Millis = snapshot.get95thPercentile() / TimeUnit.MILLISECONDS.toNanos(1);
+            p99Millis = snapshot.get99thPercentile() / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMedianMillis() {
+            return medianMillis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+    }
+
+    public static final class PlannedResult {
+        @JsonProperty
+        final AtomicLong objectCount = new AtomicLong();
+        @JsonProperty
+        final AtomicLong byteCount = new AtomicLong();
+
+        public long getObjectCount() {
+            return objectCount.get();
+        }
+
+        public long getByteCount() {
+            return byteCount.get();
+        }
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Splits the keyspace of a container into contiguous marker ranges, so that a
+ * bounce can crawl and reconcile every range concurrently. The boundaries are
+ * learned from the keys seen by the previous crawl of the same container; a
+ * container that was never crawled is processed as a single range.
+ */
+public final class KeyspaceSharder {
+    private final int shardCount;
+    private final long sampleInterval;
+    private final Map<String, List<String>> boundaries = new ConcurrentHashMap<>();
+
+    public KeyspaceSharder(int shardCount, long sampleInterval) {
+        checkArgument(shardCount > 0, "shard count must be positive");
+        checkArgument(sampleInterval > 0, "sample interval must be positive");
+        this.shardCount = shardCount;
+        this.sampleInterval = sampleInterval;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public List<KeyRange> getShards(String container) {
+        List<String> keys = boundaries.getOrDefault(container, ImmutableList.of());
+        ImmutableList.Builder<KeyRange> builder = ImmutableList.builder();
+        String start = null;
+        for (String key : keys) {
+            builder.add(KeyRange.create(start, key));
+            start = key;
+        }
+        builder.add(KeyRange.create(start, null));
+        return builder.build();
+    }
+
+    public Sampler newSampler(String container) {
+        return new Sampler(container);
+    }
+
+    void setBoundaries(String container, List<String> keys) {
+        boundaries.put(container, ImmutableList.copyOf(keys));
+    }
+
+    /**
+     * A range of keys, exclusive of the start marker and inclusive of the end
+     * marker. A null marker leaves that side of the range unbounded.
+     */
+    @AutoValue
+    public abstract static class KeyRange {
+        public static KeyRange create(@Nullable String startMarker, @Nullable String endMarker) {
+            return new AutoValue_KeyspaceSharder_KeyRange(startMarker, endMarker);
+        }
+
+        @Nullable
+        public abstract String getStartMarker();
+        @Nullable
+        public abstract String getEndMarker();
+
+        public boolean contains(String name) {
+            String start = getStartMarker();
+            String end = getEndMarker();
+            return (start == null || name.compareTo(start) > 0) && (end == null || name.compareTo(end) <= 0);
+        }
+    }
+
+    /**
+     * Collects every sampleInterval-th key observed by a crawl. Keys may be
+     * offered concurrently from several shards.
+     */
+    public final class Sampler {
+        private final String container;
+        private final AtomicLong count = new AtomicLong();
+        private final ConcurrentSkipListSet<String> samples = new ConcurrentSkipListSet<>();
+
+        private Sampler(String container) {
+            this.container = container;
+        }
+
+        public void offer(String key) {
+            if (count.incrementAndGet() % sampleInterval == 0) {
+                samples.add(key);
+            }
+        }
+
+        /**
+         * Replace the boundaries of the container with evenly spaced samples
+         * from this crawl. Only call this once the whole keyspace was crawled.
+         */
+        public void finish() {
+            List<String> sorted = new ArrayList<>(samples);
+            List<String> keys = new ArrayList<>();
+            int shards = Math.min(shardCount, sorted.size() + 1);
+            for (int i = 1; i < shards; i++) {
+                keys.add(sorted.get(i * sorted.size() / shards));
+            }
+            setBoundaries(container, keys);
+        }
+    }
+}
@@ -6,18 +6,29 @@
 package com.bouncestorage.bounce.admin;
 
 import java.util.Date;
+import java.util.List;
 
 import javax.ws.rs.HttpMethod;
 
+import com.bouncestorage.bounce.BounceBlobStore;
 import com.bouncestorage.bounce.ForwardingBlobStore;
 
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.domain.PageSet;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.options.CopyOptions;
 import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
 import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.io.Payload;
 
 public final class LoggingBlobStore extends ForwardingBlobStore {
+    /** Whether copies from and to the backend are checked against the digests it reports. */
+    public static final String VERIFY_COPIES = "verify-copies";
 
     private BounceApplication app;
     private final int id;
@@ -35,10 +46,14 @@ public final class LoggingBlobStore extends ForwardingBlobStore {
 
     @Override
     public Blob getBlob(String containerName, String blobName, GetOptions options) {
+        BackendThrottle throttle = acquireBackgroundRequest();
         Date startTime = new Date();
         Blob blob = delegate().getBlob(containerName, blobName, options);
 
         if (blob != null) {
+            if (throttle != null) {
+                blob.setPayload(throttle.wrap(blob.getPayload()));
+            }
             app.getBounceStats().logOperation(HttpMethod.GET, getProviderId(), containerName, blobName,
                     blob.getMetadata().getSize(), startTime.getTime());
         }
@@ -52,6 +67,10 @@ public final class LoggingBlobStore extends ForwardingBlobStore {
 
     @Override
     public String putBlob(String containerName, Blob blob, PutOptions options) {
+        BackendThrottle throttle = acquireBackgroundRequest();
+        if (throttle != null) {
+            blob.setPayload(throttle.wrap(blob.getPayload()));
+        }
         Date startTime = new Date();
         String result = delegate().putBlob(containerName, blob, options);
         app.getBounceStats().logOperation(HttpMethod.PUT, getProviderId(), containerName, blob.getMetadata().getName(),
@@ -61,6 +80,7 @@ public final class LoggingBlobStore extends ForwardingBlobStore {
 
     @Override
     public void removeBlob(String containerName, String blobName) {
+        acquireBackgroundRequest();
         Date startTime = new Date();
         BlobMetadata meta = delegate().blobMetadata(containerName, blobName);
         if (meta != null) {
@@ -70,7 +90,71 @@ public final class LoggingBlobStore extends ForwardingBlobStore {
         }
     }
 
+    @Override
+    public BlobMetadata blobMetadata(String container, String name) {
+        acquireBackgroundRequest();
+        return delegate().blobMetadata(container, name);
+    }
+
+    @Override
+    public PageSet<? extends StorageMetadata> list(String container, ListContainerOptions options) {
+        acquireBackgroundRequest();
+        return delegate().list(container, options);
+    }
+
+    @Override
+    public String copyBlob(String fromContainer, String fromName, String toContainer, String toName,
+                           CopyOptions options) {
+        acquireBackgroundRequest();
+        return delegate().copyBlob(fromContainer, fromName, toContainer, toName, options);
+    }
+
+    @Override
+    public MultipartUpload initiateMultipartUpload(String container, BlobMetadata blobMetadata) {
+        acquireBackgroundRequest();
+        return delegate().initiateMultipartUpload(container, blobMetadata);
+    }
+
+    @Override
+    public MultipartPart uploadMultipartPart(MultipartUpload upload, int partNumber, Payload payload) {
+        BackendThrottle throttle = acquireBackgroundRequest();
+        Long length = payload.getContentMetadata().getContentLength();
+        Date startTime = new Date();
+        MultipartPart part = delegate().uploadMultipartPart(upload, partNumber,
+                throttle != null ? throttle.wrap(payload) : payload);
+        app.getBounceStats().logOperation(HttpMethod.PUT, getProviderId(), upload.containerName(),
+                upload.blobName(), length, startTime.getTime());
+        return part;
+    }
+
+    @Override
+    public String completeMultipartUpload(MultipartUpload upload, List<MultipartPart> parts) {
+        acquireBackgroundRequest();
+        return delegate().completeMultipartUpload(upload, parts);
+    }
+
     public int getProviderId() {
         return id;
     }
+
+    public boolean verifiesCopies() {
+        if (app == null) {
+            return true;
+        }
+        return app.getConfiguration().getBoolean(
+                BounceBlobStore.STORE_PROPERTY + "." + id + "." + VERIFY_COPIES, true);
+    }
+
+    /**
+     * Acquire a request from the throttle of this backend if the current
+     * thread runs a background task, and return the throttle for its payload.
+     */
+    private BackendThrottle acquireBackgroundRequest() {
+        if (app == null || !BackendThrottle.isBackground()) {
+            return null;
+        }
+        BackendThrottle throttle = app.getBackendThrottle(id);
+        throttle.acquireRequest();
+        return throttle;
+    }
 }
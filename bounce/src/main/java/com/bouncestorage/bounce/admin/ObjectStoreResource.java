@@ -162,6 +162,14 @@ public final class ObjectStoreResource {
         properties.setProperty(prefix + "nickname", objectStore.nickname);
         properties.setProperty(prefix + PROPERTIES_PREFIX + "credential",
                 objectStore.credential == null ? "" : objectStore.credential);
+        if (objectStore.backgroundBytesPerSecond != null) {
+            properties.setProperty(prefix + BackendThrottle.BYTES_PER_SECOND,
+                    Long.toString(objectStore.backgroundBytesPerSecond));
+        }
+        if (objectStore.backgroundRequestsPerSecond != null) {
+            properties.setProperty(prefix + BackendThrottle.REQUESTS_PER_SECOND,
+                    Long.toString(objectStore.backgroundRequestsPerSecond));
+        }
         config.setAll(properties);
         return "{\"status\":\"success\"}";
     }
@@ -209,6 +217,10 @@ public final class ObjectStoreResource {
             store.setRegion(value);
         } else if (field.equalsIgnoreCase("storageClass")) {
             store.setStorageClass(ObjectStore.StorageClass.valueOf(value));
+        } else if (field.equalsIgnoreCase(BackendThrottle.BYTES_PER_SECOND)) {
+            store.setBackgroundBytesPerSecond(Long.valueOf(value));
+        } else if (field.equalsIgnoreCase(BackendThrottle.REQUESTS_PER_SECOND)) {
+            store.setBackgroundRequestsPerSecond(Long.valueOf(value));
         }
     }
 
@@ -246,6 +258,8 @@ public final class ObjectStoreResource {
         private String region;
         private int id;
         private StorageClass storageClass;
+        private Long backgroundBytesPerSecond;
+        private Long backgroundRequestsPerSecond;
 
         public StorageClass getStorageClass() {
             return storageClass;
@@ -329,6 +343,22 @@ public final class ObjectStoreResource {
             return id;
         }
 
+        public Long getBackgroundBytesPerSecond() {
+            return backgroundBytesPerSecond;
+        }
+
+        public void setBackgroundBytesPerSecond(Long backgroundBytesPerSecond) {
+            this.backgroundBytesPerSecond = backgroundBytesPerSecond;
+        }
+
+        public Long getBackgroundRequestsPerSecond() {
+            return backgroundRequestsPerSecond;
+        }
+
+        public void setBackgroundRequestsPerSecond(Long backgroundRequestsPerSecond) {
+            this.backgroundRequestsPerSecond = backgroundRequestsPerSecond;
+        }
+
         Properties getJCloudsProperties(String propertiesPrefix) {
             Properties properties = new Properties();
 
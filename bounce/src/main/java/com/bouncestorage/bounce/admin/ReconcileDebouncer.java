@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the write-back reconciles of keys that are written repeatedly.
+ * Each key has at most one pending reconcile per delay: writing the key again
+ * pushes its deadline back instead of scheduling another task, and the task
+ * reschedules itself until the latest deadline passes. At most maxPending
+ * reconciles are pending; keys written beyond that are left to the next
+ * bounce, which finds them through their marker or the dirty key log.
+ */
+public final class ReconcileDebouncer {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ScheduledExecutorService executor;
+    private final int maxPending;
+    private final ConcurrentMap<PendingKey, Pending> pending = new ConcurrentHashMap<>();
+
+    public ReconcileDebouncer(ScheduledExecutorService executor, int maxPending) {
+        checkArgument(maxPending > 0, "max pending reconciles must be positive");
+        this.executor = requireNonNull(executor);
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Run the reconcile of the key once delay elapsed since it was last
+     * scheduled.
+     *
+     * @return false if too many reconciles are pending
+     */
+    public boolean schedule(String container, String key, Duration delay, Runnable reconcile) {
+        PendingKey pendingKey = new PendingKey(container, key, delay);
+        long deadline = System.nanoTime() + delay.toNanos();
+        while (true) {
+            Pending entry = pending.get(pendingKey);
+            if (entry == null) {
+                if (pending.size() >= maxPending) {
+                    logger.debug("{} reconciles pending, leaving {} to the next bounce", pending.size(), key);
+                    return false;
+                }
+                entry = new Pending(pendingKey, reconcile, deadline);
+                if (pending.putIfAbsent(pendingKey, entry) == null) {
+                    submit(entry, delay.toNanos());
+                    return true;
+                }
+                continue;
+            }
+            synchronized (entry) {
+                if (!entry.done) {
+                    entry.deadline = Math.max(entry.deadline, deadline);
+                    entry.reconcile = reconcile;
+                    return true;
+                }
+            }
+            // the entry just fired, schedule a new one
+        }
+    }
+
+    @VisibleForTesting
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private void submit(Pending entry, long delayNanos) {
+        try {
+            executor.schedule(() -> fire(entry), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.remove(entry.key, entry);
+            throw e;
+        }
+    }
+
+    private void fire(Pending entry) {
+        Runnable reconcile;
+        synchronized (entry) {
+            long remaining = entry.deadline - System.nanoTime();
+            if (remaining > 0) {
+                submit(entry, remaining);
+                return;
+            }
+            entry.done = true;
+            pending.remove(entry.key, entry);
+            reconcile = entry.reconcile;
+        }
+        BackendThrottle.runInBackground(reconcile);
+    }
+
+    private static final class PendingKey {
+        private final String container;
+        private final String key;
+        private final Duration delay;
+
+        PendingKey(String container, String key, Duration delay) {
+            this.container = requireNonNull(container);
+            this.key = requireNonNull(key);
+            this.delay = requireNonNull(delay);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof PendingKey)) {
+                return false;
+            }
+            PendingKey that = (PendingKey) other;
+            return container.equals(that.container) && key.equals(that.key) && delay.equals(that.delay);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(container, key, delay);
+        }
+    }
+
+    private static final class Pending {
+        private final PendingKey key;
+        private Runnable reconcile;
+        private long deadline;
+        private boolean done;
+
+        Pending(PendingKey key, Runnable reconcile, long deadline) {
+            this.key = key;
+            this.reconcile = reconcile;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.propagate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Pool of reconcile workers fed by the bounce crawlers. Every submitted
+ * object holds a global permit and a permit of its container until it is
+ * reconciled, so a crawler blocks once its container, or the pool as a whole,
+ * has too many objects in flight. Slow tiers therefore throttle the crawl
+ * instead of accumulating listed objects in memory. The workers run as
+ * background tasks, subject to the {@link BackendThrottle} of each backend.
+ */
+public final class ReconcilePipeline {
+    private final int containerConcurrency;
+    private final Semaphore globalPermits;
+    private final ConcurrentMap<String, Semaphore> containerPermits = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+
+    public ReconcilePipeline(int threads, int queueSize, int containerConcurrency) {
+        checkArgument(threads > 0, "reconcile threads must be positive");
+        checkArgument(queueSize >= 0, "reconcile queue size must not be negative");
+        checkArgument(containerConcurrency > 0, "container concurrency must be positive");
+        this.containerConcurrency = containerConcurrency;
+        globalPermits = new Semaphore(threads + queueSize);
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("bounce-reconcile-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    public Batch newBatch(String container) {
+        return new Batch(containerPermits.computeIfAbsent(container, c -> new Semaphore(containerConcurrency)));
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /** Objects submitted by one crawler, which waits for all of them with {@link #await()}. */
+    public final class Batch {
+        private final Semaphore permits;
+        private final Phaser pending = new Phaser(1);
+
+        private Batch(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        /** Submit a task, blocking while the container or the pool is saturated. */
+        public void submit(Runnable task) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw propagate(e);
+            }
+            try {
+                globalPermits.acquire();
+            } catch (InterruptedException e) {
+                permits.release();
+                Thread.currentThread().interrupt();
+                throw propagate(e);
+            }
+            pending.register();
+            try {
+                workers.execute(() -> {
+                    try {
+                        BackendThrottle.runInBackground(task);
+                    } finally {
+                        release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            }
+        }
+
+        /** Wait until every submitted task completed. */
+        public void await() {
+            pending.arriveAndAwaitAdvance();
+        }
+
+        private void release() {
+            globalPermits.release();
+            permits.release();
+            pending.arriveAndDeregister();
+        }
+    }
+}
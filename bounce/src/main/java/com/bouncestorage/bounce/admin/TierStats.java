@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Object count, total size and size distribution of one tier of a container,
+ * accumulated by the reconcile workers of a bounce. The counters are striped
+ * so that concurrent workers do not contend on them.
+ */
+public final class TierStats {
+    // bucket 0 counts empty objects, bucket i objects of [2^(i-1), 2^i) bytes
+    private static final int BUCKETS = Long.SIZE + 1;
+
+    private final LongAdder objectCount = new LongAdder();
+    private final LongAdder totalSize = new LongAdder();
+    private final LongAdder[] sizeHistogram = new LongAdder[BUCKETS];
+
+    public TierStats() {
+        for (int i = 0; i < BUCKETS; i++) {
+            sizeHistogram[i] = new LongAdder();
+        }
+    }
+
+    /** Count an object occupying size bytes in the tier. */
+    public void add(long size) {
+        objectCount.increment();
+        totalSize.add(size);
+        sizeHistogram[Long.SIZE - Long.numberOfLeadingZeros(Math.max(size, 0))].increment();
+    }
+
+    @JsonProperty
+    public long getObjectCount() {
+        return objectCount.sum();
+    }
+
+    @JsonProperty
+    public long getTotalSize() {
+        return totalSize.sum();
+    }
+
+    /** Return the number of objects by the smallest size of their power of two bucket. */
+    @JsonProperty
+    public SortedMap<Long, Long> getSizeHistogram() {
+        SortedMap<Long, Long> histogram = new TreeMap<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = sizeHistogram[i].sum();
+            if (count != 0) {
+                histogram.put(i == 0 ? 0 : 1L << (i - 1), count);
+            }
+        }
+        return histogram;
+    }
+}
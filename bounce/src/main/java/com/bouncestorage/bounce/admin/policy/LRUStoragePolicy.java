@@ -20,6 +20,7 @@ import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobMetadata;
 import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
 import org.jclouds.blobstore.options.PutOptions;
 
 @AutoService(BouncePolicy.class)
@@ -46,20 +47,19 @@ public class LRUStoragePolicy extends StoragePolicy {
     // 44 bytes overhead per entry (in addition to String and Long)
     // assuming 200 bytes of overhead total, that's 200MB / million objects
     private Map<BlobObject, LRUValue> lru = Collections.synchronizedMap(new LinkedHashMap<>(100000, 0.75f));
-    private Instant lruEvictTo;
 
     private BlobObject getLRUKey(String containerName, String blobName) {
         return BlobObject.create(containerName, blobName);
     }
 
     @Override
-    public void prepareBounce(String containerName) {
-        lruEvictTo = null;
-        super.prepareBounce(containerName);
+    protected Eviction newEviction() {
+        return new LRUEviction();
     }
 
     @Override
-    protected boolean shouldEvict(String container, String blob, StorageMetadata meta) {
+    protected boolean shouldEvict(Eviction state, String container, String blob, StorageMetadata meta) {
+        Instant lruEvictTo = ((LRUEviction) state).lruEvictTo;
         if (lruEvictTo != null) {
             LRUValue v = lru.get(getLRUKey(container, blob));
             if (v != null) {
@@ -67,11 +67,12 @@ public class LRUStoragePolicy extends StoragePolicy {
             }
         }
 
-        return super.shouldEvict(container, blob, meta);
+        return super.shouldEvict(state, container, blob, meta);
     }
 
-    Instant getEvictionTime(TreeMap<Instant, Long> sizeHistogram) {
-        long delta = currentSize - capacity;
+    @Override
+    Instant getEvictionTime(Eviction state, TreeMap<Instant, Long> sizeHistogram) {
+        long delta = state.currentSize - capacity;
         if (delta < 0) {
             return Instant.MIN;
         }
@@ -87,7 +88,7 @@ public class LRUStoragePolicy extends StoragePolicy {
             delta -= v.getSize();
             if (delta < 0) {
                 logger.debug("evicting up to atime {}", v.getAccessTime());
-                lruEvictTo = Instant.ofEpochMilli(v.getAccessTime());
+                ((LRUEviction) state).lruEvictTo = Instant.ofEpochMilli(v.getAccessTime());
                 break;
             }
         }
@@ -96,23 +97,23 @@ public class LRUStoragePolicy extends StoragePolicy {
     }
 
     @Override
-    protected void setEvictionTime(String containerName) {
-        currentSize = 0;
+    protected void setEvictionTime(Eviction state, String containerName) {
         // The MultiSet is limited to int, hence using the Map here
         TreeMap<Instant, Long> sizeHistogram = new TreeMap<>();
 
         // Populate the histogram
-        for (StorageMetadata meta : Utils.crawlBlobStore(getSource(), containerName)) {
+        for (StorageMetadata meta : Utils.crawlBlobStore(getSource(), containerName, new ListContainerOptions(),
+                null, getCrawlPrefetchDepth())) {
             String blobName = meta.getName();
             if (!lru.containsKey(getLRUKey(containerName, blobName))) {
                 Instant date = getInstant(meta.getLastModified());
                 sizeHistogram.put(date, sizeHistogram.getOrDefault(date, 0L) + meta.getSize());
             }
-            currentSize += meta.getSize();
+            state.currentSize += meta.getSize();
         }
 
-        evictionTime = getEvictionTime(sizeHistogram);
-        logger.debug("Set eviction time for " + containerName + ": " + evictionTime);
+        state.evictionTime = getEvictionTime(state, sizeHistogram);
+        logger.debug("Set eviction time for " + containerName + ": " + state.evictionTime);
     }
 
 
@@ -154,4 +155,9 @@ public class LRUStoragePolicy extends StoragePolicy {
         lru.remove(key);
         lru.put(key, LRUValue.create(System.currentTimeMillis(), size));
     }
+
+    private static final class LRUEviction extends Eviction {
+        // objects accessed before this are evicted, once the unaccessed ones are
+        private Instant lruEvictTo;
+    }
 }
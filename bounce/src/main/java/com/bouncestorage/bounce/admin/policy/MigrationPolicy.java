@@ -8,19 +8,19 @@ package com.bouncestorage.bounce.admin.policy;
 import static com.google.common.base.Throwables.propagate;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeMap;
 
 import javax.ws.rs.ServiceUnavailableException;
 
 import com.bouncestorage.bounce.BounceStorageMetadata;
 import com.bouncestorage.bounce.Utils;
 import com.bouncestorage.bounce.admin.BouncePolicy;
+import com.bouncestorage.bounce.utils.MergedListing;
 import com.bouncestorage.bounce.utils.ReconcileLocker;
 import com.google.auto.service.AutoService;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.PeekingIterator;
 
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.KeyNotFoundException;
@@ -101,49 +101,46 @@ public final class MigrationPolicy extends BouncePolicy {
         }
     }
 
+    @Override
+    public BounceResult planObject(String container, BounceStorageMetadata sourceObject, StorageMetadata
+            destinationObject) {
+        if (sourceObject == null || sourceObject.getRegions().equals(DESTINATION)) {
+            return BounceResult.NO_OP;
+        } else if (sourceObject.getRegions().equals(SOURCE) || destinationObject == null) {
+            return BounceResult.MOVE;
+        } else if (!sourceObject.getSize().equals(destinationObject.getSize()) ||
+                sourceObject.getLastModified().compareTo(destinationObject.getLastModified()) > 0) {
+            return BounceResult.NO_OP;
+        }
+        return BounceResult.REMOVE;
+    }
+
     @Override
     public PageSet<? extends StorageMetadata> list(String containerName, ListContainerOptions listContainerOptions) {
-        PeekingIterator<StorageMetadata> sourcePage = Iterators.peekingIterator(
-                Utils.crawlBlobStore(getSource(), containerName, listContainerOptions)
-                        .iterator());
-        PeekingIterator<StorageMetadata> destinationPage = Iterators.peekingIterator(
-                Utils.crawlBlobStore(getDestination(), containerName, listContainerOptions)
-                        .iterator());
-        TreeMap<String, BounceStorageMetadata> contents = new TreeMap<>();
+        MergedListing listing = new MergedListing(ImmutableList.of(
+                Utils.crawlBlobStore(getSource(), containerName, listContainerOptions).iterator(),
+                Utils.crawlBlobStore(getDestination(), containerName, listContainerOptions).iterator()));
+        List<BounceStorageMetadata> contents = new ArrayList<>();
         int maxResults = listContainerOptions.getMaxResults() == null ?
                 1000 : listContainerOptions.getMaxResults();
 
-        StorageMetadata sourceMeta = Utils.getNextOrNull(sourcePage);
-        StorageMetadata destinationMeta = Utils.getNextOrNull(destinationPage);
-        while (contents.size() < maxResults && (sourceMeta != null || destinationMeta != null)) {
+        while (contents.size() < maxResults && listing.hasNext()) {
+            StorageMetadata[] row = listing.next();
+            StorageMetadata sourceMeta = row[0];
+            StorageMetadata destinationMeta = row[1];
             if (sourceMeta != null && destinationMeta != null) {
-                String sourceName = sourceMeta.getName();
-                String destinationName = destinationMeta.getName();
-                int compare = sourceName.compareTo(destinationName);
-                if (compare < 0) {
-                    contents.put(sourceName, new BounceStorageMetadata(sourceMeta, SOURCE));
-                    sourceMeta = com.bouncestorage.bounce.Utils.getNextOrNull(sourcePage);
-                } else if (compare == 0) {
-                    contents.put(sourceName, new BounceStorageMetadata(sourceMeta, BounceStorageMetadata.EVERYWHERE));
-                    sourceMeta = Utils.getNextOrNull(sourcePage);
-                    destinationMeta = Utils.getNextOrNull(destinationPage);
-                } else {
-                    contents.put(destinationName, new BounceStorageMetadata(destinationMeta, DESTINATION));
-                    destinationMeta = Utils.getNextOrNull(destinationPage);
-                }
-            } else if (sourceMeta == null) {
-                contents.put(destinationMeta.getName(), new BounceStorageMetadata(destinationMeta, DESTINATION));
-                destinationMeta = Utils.getNextOrNull(destinationPage);
+                contents.add(new BounceStorageMetadata(sourceMeta, BounceStorageMetadata.EVERYWHERE));
+            } else if (sourceMeta != null) {
+                contents.add(new BounceStorageMetadata(sourceMeta, SOURCE));
             } else {
-                contents.put(sourceMeta.getName(), new BounceStorageMetadata(sourceMeta, SOURCE));
-                sourceMeta = Utils.getNextOrNull(sourcePage);
+                contents.add(new BounceStorageMetadata(destinationMeta, DESTINATION));
             }
         }
 
-        if (sourceMeta != null || destinationMeta != null) {
-            return new PageSetImpl<>(contents.values(), contents.lastKey());
+        if (listing.hasNext()) {
+            return new PageSetImpl<>(contents, contents.get(contents.size() - 1).getName());
         }
-        return new PageSetImpl<>(contents.values(), null);
+        return new PageSetImpl<>(contents, null);
     }
 
     @Override
@@ -24,16 +24,17 @@ import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.commons.configuration.Configuration;
 import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.options.ListContainerOptions;
 
 @AutoService(BouncePolicy.class)
 public class StoragePolicy extends WriteBackPolicy {
     public static final String CAPACITY_SETTING = "capacity";
 
     protected long capacity;
-    protected Instant evictionTime;
 
-    @VisibleForTesting
-    long currentSize;
+    // planning a bounce works from its own state, so that it does not change what bounces evict
+    private volatile Eviction eviction = newEviction();
+    private volatile Eviction plannedEviction = newEviction();
 
     @Override
     public void init(BounceApplication app, Configuration configuration) {
@@ -49,14 +50,23 @@ public class StoragePolicy extends WriteBackPolicy {
      */
     @Override
     public void prepareBounce(String containerName) {
-        currentSize = 0;
-        evictionTime = null;
-        setEvictionTime(containerName);
+        eviction = prepareEviction(containerName);
+    }
+
+    @Override
+    public void preparePlan(String containerName) {
+        plannedEviction = prepareEviction(containerName);
     }
 
-    protected boolean shouldEvict(String container, String blob, StorageMetadata meta) {
+    /** Evicting to capacity needs the size of every object, and unchanged objects may need evicting. */
+    @Override
+    public boolean isIncrementalSafe() {
+        return false;
+    }
+
+    protected boolean shouldEvict(Eviction state, String container, String blob, StorageMetadata meta) {
         Instant objectDate = getInstant(meta.getLastModified());
-        return !objectDate.isAfter(evictionTime);
+        return !objectDate.isAfter(state.evictionTime);
     }
 
     @Override
@@ -66,12 +76,13 @@ public class StoragePolicy extends WriteBackPolicy {
             return super.reconcileObject(container, sourceObject, destinationObject);
         }
 
-        if (currentSize < capacity) {
+        Eviction state = eviction;
+        if (state.currentSize < capacity) {
             return super.reconcileObject(container, sourceObject, destinationObject);
         }
 
         BounceResult res;
-        if (shouldEvict(container, sourceObject.getName(), sourceObject)) {
+        if (shouldEvict(state, container, sourceObject.getName(), sourceObject)) {
             try {
                 res = maybeMoveObject(container, sourceObject, destinationObject);
             } catch (IOException e) {
@@ -82,29 +93,68 @@ public class StoragePolicy extends WriteBackPolicy {
         }
 
         if (res == BounceResult.MOVE || res == BounceResult.REMOVE || res == BounceResult.LINK) {
-            currentSize -= sourceObject.getSize();
+            state.currentSize -= sourceObject.getSize();
         }
 
         return res;
     }
 
-    protected void setEvictionTime(String containerName) {
+    @Override
+    public BounceResult planObject(String container, BounceStorageMetadata sourceObject,
+                                   StorageMetadata destinationObject) {
+        Eviction state = plannedEviction;
+        if (sourceObject == null || state.currentSize < capacity) {
+            return super.planObject(container, sourceObject, destinationObject);
+        }
+
+        BounceResult res;
+        if (shouldEvict(state, container, sourceObject.getName(), sourceObject)) {
+            res = planMove(sourceObject, destinationObject);
+        } else {
+            res = super.planObject(container, sourceObject, destinationObject);
+        }
+
+        // account for the planned evictions like a bounce would
+        if (res == BounceResult.MOVE || res == BounceResult.REMOVE || res == BounceResult.LINK) {
+            state.currentSize -= sourceObject.getSize();
+        }
+
+        return res;
+    }
+
+    @VisibleForTesting
+    Eviction getEviction() {
+        return eviction;
+    }
+
+    protected Eviction newEviction() {
+        return new Eviction();
+    }
+
+    private Eviction prepareEviction(String containerName) {
+        Eviction state = newEviction();
+        setEvictionTime(state, containerName);
+        return state;
+    }
+
+    protected void setEvictionTime(Eviction state, String containerName) {
         // The MultiSet is limited to int, hence using the Map here
         TreeMap<Instant, Long> sizeHistogram = new TreeMap<>();
 
         // Populate the histogram
-        for (StorageMetadata meta : Utils.crawlBlobStore(getSource(), containerName)) {
+        for (StorageMetadata meta : Utils.crawlBlobStore(getSource(), containerName, new ListContainerOptions(),
+                null, getCrawlPrefetchDepth())) {
             Instant date = getInstant(meta.getLastModified());
             sizeHistogram.put(date, sizeHistogram.getOrDefault(date, 0L) + meta.getSize());
-            currentSize += meta.getSize();
+            state.currentSize += meta.getSize();
         }
 
-        evictionTime = getEvictionTime(sizeHistogram);
-        logger.debug("Set eviction time for " + containerName + ": " + evictionTime);
+        state.evictionTime = getEvictionTime(state, sizeHistogram);
+        logger.debug("Set eviction time for " + containerName + ": " + state.evictionTime);
     }
 
-    Instant getEvictionTime(TreeMap<Instant, Long> sizeHistogram) {
-        long delta = currentSize - capacity;
+    Instant getEvictionTime(Eviction state, TreeMap<Instant, Long> sizeHistogram) {
+        long delta = state.currentSize - capacity;
         if (delta < 0) {
             return Instant.MIN;
         }
@@ -127,4 +177,11 @@ public class StoragePolicy extends WriteBackPolicy {
     public long getCapacity() {
         return capacity;
     }
+
+    /** The size of a container and the objects to evict from it, as of the start of a bounce. */
+    protected static class Eviction {
+        // reduced by the evictions of the bounce
+        protected long currentSize;
+        protected Instant evictionTime = Instant.MIN;
+    }
 }
@@ -11,23 +11,26 @@ import static com.bouncestorage.bounce.Utils.eTagsEqual;
 import static com.google.common.base.Throwables.propagate;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.TreeMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.ServiceUnavailableException;
@@ -38,19 +41,26 @@ import com.bouncestorage.bounce.BounceLink;
 import com.bouncestorage.bounce.BounceStorageMetadata;
 import com.bouncestorage.bounce.SystemMetadataSerializer;
 import com.bouncestorage.bounce.Utils;
+import com.bouncestorage.bounce.admin.BackendThrottle;
 import com.bouncestorage.bounce.admin.BounceApplication;
 import com.bouncestorage.bounce.admin.BouncePolicy;
+import com.bouncestorage.bounce.admin.ReconcileDebouncer;
+import com.bouncestorage.bounce.utils.ChangeJournal;
+import com.bouncestorage.bounce.utils.DigestMismatchException;
+import com.bouncestorage.bounce.utils.DirtyKeyLog;
+import com.bouncestorage.bounce.utils.LinkMetadataCache;
+import com.bouncestorage.bounce.utils.MergedListing;
 import com.bouncestorage.bounce.utils.ReconcileLocker;
+import com.bouncestorage.bounce.utils.RingBufferTee;
 import com.google.auto.service.AutoService;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
-import com.google.common.collect.PeekingIterator;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.commons.configuration.Configuration;
-import org.apache.commons.io.input.TeeInputStream;
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.KeyNotFoundException;
 import org.jclouds.blobstore.domain.Blob;
@@ -74,6 +84,11 @@ import org.jclouds.util.Strings2;
 public class WriteBackPolicy extends BouncePolicy {
     public static final String COPY_DELAY = "copyDelay";
     public static final String EVICT_DELAY = "evictDelay";
+    public static final String TEE_BUFFER_SIZE = "teeBufferSize";
+    public static final String PROMOTE_ON_PARTIAL_READ = "promoteOnPartialRead";
+    public static final String LINK_CACHE_SIZE = "linkCacheSize";
+    public static final String TAKEOVER_CONCURRENCY = "takeOverConcurrency";
+    public static final String SANITY_CHECK_SAMPLE_SIZE = "sanityCheckSampleSize";
     public static final String LOG_MARKER_SUFFIX = "     bounce!log";
     @VisibleForTesting
     public static final String INTERNAL_PREFIX = ".bounce internal reserved prefix/";
@@ -84,8 +99,21 @@ public class WriteBackPolicy extends BouncePolicy {
     private static final Iterable<Character> skipPathEncoding = Lists.charactersOf("/:;=");
     private static final String LOG_MARKER_SUFFIX_ESCAPED = Strings2.urlEncode(LOG_MARKER_SUFFIX, skipPathEncoding);
     private static final ListContainerOptions LIST_CONTAINER_RECURSIVE = new ListContainerOptions().recursive();
+    private static final int DEFAULT_TEE_BUFFER_SIZE = 1024 * 1024;
+    private static final long DEFAULT_LINK_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_TAKEOVER_CONCURRENCY = 16;
+    private static final int TAKEOVER_CHECKPOINT_INTERVAL = 1000;
+    private static final int DEFAULT_SANITY_CHECK_SAMPLE_SIZE = 64;
+    // shared by the sanity checks of every container, so that startup does not flood the near store
+    private static final ExecutorService SANITY_CHECK_EXECUTOR = Executors.newFixedThreadPool(16,
+            new ThreadFactoryBuilder().setNameFormat("sanity-check-%d").setDaemon(true).build());
     protected Duration copyDelay;
     protected Duration evictDelay;
+    private int teeBufferSize = DEFAULT_TEE_BUFFER_SIZE;
+    private boolean promoteOnPartialRead;
+    private LinkMetadataCache linkCache = new LinkMetadataCache(DEFAULT_LINK_CACHE_SIZE);
+    private int takeOverConcurrency = DEFAULT_TAKEOVER_CONCURRENCY;
+    private int sanityCheckSampleSize = DEFAULT_SANITY_CHECK_SAMPLE_SIZE;
     private ReconcileLocker reconcileLocker = new ReconcileLocker();
 
     public static boolean isMarkerBlob(String name) {
@@ -105,7 +133,21 @@ public class WriteBackPolicy extends BouncePolicy {
         }
     }
 
-    private void putMarkerBlob(String containerName, String key) {
+    private DirtyKeyLog getDirtyKeyLog() {
+        return app == null ? null : app.getDirtyKeyLog();
+    }
+
+    /**
+     * Record that the near copy of the key is about to become newer than its
+     * far copy, in the dirty key log if configured, otherwise with a marker
+     * blob.
+     */
+    private void markDirty(String containerName, String key) {
+        DirtyKeyLog dirtyKeyLog = getDirtyKeyLog();
+        if (dirtyKeyLog != null) {
+            dirtyKeyLog.markDirty(containerName, key, app.getClock().instant());
+            return;
+        }
         getSource().putBlob(containerName,
                 getSource().blobBuilder(blobGetMarkerName(key))
                         .payload(ByteSource.empty())
@@ -113,11 +155,28 @@ public class WriteBackPolicy extends BouncePolicy {
                         .build());
     }
 
-    private void removeMarkerBlob(String containerName, String key) {
+    /**
+     * Record that the far copy of the key is up to date. With the dirty key
+     * log, only marker blobs known to be left from before the log was
+     * enabled are removed.
+     */
+    private void markClean(String containerName, String key, boolean hasMarkerBlob) {
+        DirtyKeyLog dirtyKeyLog = getDirtyKeyLog();
+        if (dirtyKeyLog != null) {
+            dirtyKeyLog.markClean(containerName, key);
+            if (!hasMarkerBlob) {
+                return;
+            }
+        }
         logger.debug("deleting marker blob for {}", key);
         getSource().removeBlob(containerName, blobGetMarkerName(key));
     }
 
+    private boolean isDirty(String containerName, String key) {
+        DirtyKeyLog dirtyKeyLog = getDirtyKeyLog();
+        return dirtyKeyLog != null && dirtyKeyLog.isDirty(containerName, key);
+    }
+
     private boolean deleteContainerOrLogContent(BlobStore blobStore, String container) {
         if (!blobStore.deleteContainerIfEmpty(container)) {
             logger.info("container {} not empty", container);
@@ -162,7 +221,9 @@ public class WriteBackPolicy extends BouncePolicy {
         }
 
         try (ReconcileLocker.LockKey ignored = reconcileLocker.lockObject(containerName, blobName, false)) {
-            putMarkerBlob(containerName, blobName);
+            journalChange(containerName, blobName);
+            linkCache.invalidate(containerName, blobName);
+            markDirty(containerName, blobName);
             String etag = getSource().putBlob(containerName, blob, options);
             enqueueReconcile(containerName, blobName);
             return etag;
@@ -177,22 +238,71 @@ public class WriteBackPolicy extends BouncePolicy {
         if (name.endsWith(LOG_MARKER_SUFFIX) || name.endsWith(LOG_MARKER_SUFFIX_ESCAPED)) {
             throw new UnsupportedOperationException("illegal suffix: " + name);
         }
+        journalChange(container, name);
+        linkCache.invalidate(container, name);
         super.removeBlob(container, name);
-        removeMarkerBlob(container, name);
+        markClean(container, name, false);
         enqueueReconcile(container, name);
     }
 
-    private void enqueueReconcile(String containerName, String blobName) {
+    private void journalChange(String containerName, String blobName) {
         if (app != null) {
-            if (isCopy()) {
-                app.executeBackgroundReconcileTask(() -> reconcileObject(containerName, blobName),
-                        copyDelay.getSeconds(), TimeUnit.SECONDS);
+            ChangeJournal journal = app.getChangeJournal();
+            if (journal != null) {
+                journal.append(containerName, blobName);
             }
-            if (isEvict() && !copyDelay.equals(evictDelay)) {
-                app.executeBackgroundReconcileTask(() -> reconcileObject(containerName, blobName),
-                        evictDelay.getSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    private void enqueueReconcile(String containerName, String blobName) {
+        if (app != null) {
+            enqueueReconcile(containerName, blobName, app.getClock().instant());
+        }
+    }
+
+    private void enqueueReconcile(String containerName, String blobName, Instant written) {
+        // keys written again before their reconcile share a single pending reconcile
+        ReconcileDebouncer debouncer = app.getReconcileDebouncer();
+        Duration elapsed = Duration.between(written, app.getClock().instant());
+        if (isCopy()) {
+            debouncer.schedule(containerName, blobName, remaining(copyDelay, elapsed),
+                    () -> reconcileObject(containerName, blobName));
+        }
+        if (isEvict() && !copyDelay.equals(evictDelay)) {
+            debouncer.schedule(containerName, blobName, remaining(evictDelay, elapsed),
+                    () -> reconcileObject(containerName, blobName));
+        }
+    }
+
+    private static Duration remaining(Duration delay, Duration elapsed) {
+        Duration remaining = delay.minus(elapsed);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * Schedule the reconciles of the keys that were written before the
+     * application restarted, with the deadlines they had when they were
+     * written. The keys are read from the dirty key log if configured,
+     * otherwise the container is scanned for marker blobs.
+     */
+    public void rearmReconciles(String containerName) {
+        Map<String, Instant> dirtyKeys;
+        DirtyKeyLog dirtyKeyLog = getDirtyKeyLog();
+        if (dirtyKeyLog != null) {
+            dirtyKeys = dirtyKeyLog.getDirtyKeys(containerName);
+        } else {
+            dirtyKeys = new TreeMap<>();
+            for (StorageMetadata meta : Utils.crawlBlobStore(getSource(), containerName,
+                    LIST_CONTAINER_RECURSIVE, null, getCrawlPrefetchDepth())) {
+                if (isMarkerBlob(meta.getName())) {
+                    Instant written = meta.getLastModified() == null ? app.getClock().instant() :
+                            meta.getLastModified().toInstant();
+                    dirtyKeys.put(markerBlobGetName(meta.getName()), written);
+                }
             }
         }
+        logger.info("rearming the reconciles of {} keys in {}", dirtyKeys.size(), containerName);
+        dirtyKeys.forEach((key, written) -> enqueueReconcile(containerName, key, written));
     }
 
     @Override
@@ -204,6 +314,11 @@ public class WriteBackPolicy extends BouncePolicy {
         if (config.getString(EVICT_DELAY) != null) {
             this.evictDelay = requireNonNull(Duration.parse(config.getString(EVICT_DELAY)));
         }
+        this.teeBufferSize = config.getInt(TEE_BUFFER_SIZE, DEFAULT_TEE_BUFFER_SIZE);
+        this.promoteOnPartialRead = config.getBoolean(PROMOTE_ON_PARTIAL_READ, false);
+        this.linkCache = new LinkMetadataCache(config.getLong(LINK_CACHE_SIZE, DEFAULT_LINK_CACHE_SIZE));
+        this.takeOverConcurrency = config.getInt(TAKEOVER_CONCURRENCY, DEFAULT_TAKEOVER_CONCURRENCY);
+        this.sanityCheckSampleSize = config.getInt(SANITY_CHECK_SAMPLE_SIZE, DEFAULT_SANITY_CHECK_SAMPLE_SIZE);
     }
 
     private String replaceMetadata(BlobStore blobStore, String container, String blobName,
@@ -224,6 +339,8 @@ public class WriteBackPolicy extends BouncePolicy {
             // nothing to copy
             return null;
         }
+        journalChange(toContainer, toName);
+        linkCache.invalidate(toContainer, toName);
 
         if (fromName.equals(toName) && options.getUserMetadata().isPresent()) {
             // we are only updating the user metadata
@@ -249,10 +366,10 @@ public class WriteBackPolicy extends BouncePolicy {
             etag = getDestination().copyBlob(fromContainer, fromName, toContainer, toName, options);
             if (etag != null) {
                 Utils.createBounceLink(getSource(), getDestination().blobMetadata(toContainer, toName));
-                removeMarkerBlob(fromContainer, toName);
+                markClean(fromContainer, toName, false);
             }
         } else {
-            putMarkerBlob(toContainer, toName);
+            markDirty(toContainer, toName);
             etag = getSource().copyBlob(fromContainer, fromName, toContainer, toName, options);
             if (!etag.equals(sourceMeta.getETag())) {
                 // another process just updated the source blob, we could have copied a link
@@ -273,16 +390,43 @@ public class WriteBackPolicy extends BouncePolicy {
         return etag;
     }
 
-    protected BounceResult reconcileObject(String container, String blob)
-            throws InterruptedException, ExecutionException {
+    /**
+     * Return whether reconciling the changed keys alone is enough, that is
+     * whether the decision for an object depends only on that object.
+     */
+    public boolean isIncrementalSafe() {
+        return true;
+    }
+
+    /**
+     * Reconcile a single object by looking up its state in both tiers, this
+     * is used by write-back reconciles and incremental bounces.
+     */
+    public BounceResult reconcileObject(String container, String blob) {
+        ObjectState state = lookupObject(container, blob);
+        if (state == null) {
+            // already gone from both tiers
+            return BounceResult.NO_OP;
+        }
+        return reconcileObject(container, state.getSource(), state.getDestination());
+    }
+
+    /**
+     * Look up the state of a single object in both tiers, as a bounce
+     * listing would report it, or return null if neither tier has it.
+     */
+    public ObjectState lookupObject(String container, String blob) {
         BlobMetadata sourceMeta = getSource().blobMetadata(container, blob);
-        BlobMetadata sourceMarkerMeta = getSource().blobMetadata(container, blobGetMarkerName(blob));
+        // marker blobs may be left from before the dirty key log was enabled
+        boolean dirty = isDirty(container, blob);
+        boolean hasMarkerBlob = !dirty &&
+                getSource().blobMetadata(container, blobGetMarkerName(blob)) != null;
         BlobMetadata destMeta = getDestination().blobMetadata(container, blob);
 
         BounceStorageMetadata meta;
         if (sourceMeta != null) {
             if (destMeta != null) {
-                if (sourceMarkerMeta != null) {
+                if (dirty || hasMarkerBlob) {
                     if (BounceLink.isLink(sourceMeta)) {
                         meta = new BounceStorageMetadata(destMeta, BounceStorageMetadata.FAR_ONLY);
                     } else {
@@ -294,13 +438,13 @@ public class WriteBackPolicy extends BouncePolicy {
             } else {
                 meta = new BounceStorageMetadata(sourceMeta, BounceStorageMetadata.NEAR_ONLY);
             }
-
-            return reconcileObject(container, meta, destMeta);
+            meta.hasMarkerBlob(hasMarkerBlob);
+            return new ObjectState(meta, destMeta);
         } else {
-            if (sourceMarkerMeta != null) {
-                removeMarkerBlob(container, blob);
+            if (dirty || hasMarkerBlob) {
+                markClean(container, blob, hasMarkerBlob);
             }
-            return reconcileObject(container, null, destMeta);
+            return destMeta == null ? null : new ObjectState(null, destMeta);
         }
     }
 
@@ -313,9 +457,9 @@ public class WriteBackPolicy extends BouncePolicy {
                 logger.debug("reconciling {} {} {}", sourceObject.getName(),
                         destinationObject == null ? "null" : destinationObject.getName(), sourceObject.getRegions());
                 try {
-                    if (isEvict() && isObjectExpired(sourceObject, evictDelay)) {
+                    if (isEvictDue(sourceObject)) {
                         return maybeMoveObject(container, sourceObject, destinationObject);
-                    } else if (isCopy() && (isImmediateCopy() || isObjectExpired(sourceObject, copyDelay))) {
+                    } else if (isCopyDue(sourceObject)) {
                         return maybeCopyObject(container, sourceObject, destinationObject);
                     }
                 } catch (IOException e) {
@@ -333,55 +477,196 @@ public class WriteBackPolicy extends BouncePolicy {
         }
     }
 
+    @Override
+    public BounceResult planObject(String container, BounceStorageMetadata sourceObject,
+                                   StorageMetadata destinationObject) {
+        if (sourceObject == null) {
+            return BounceResult.REMOVE;
+        } else if (isEvictDue(sourceObject)) {
+            return planMove(sourceObject, destinationObject);
+        } else if (isCopyDue(sourceObject)) {
+            return planCopy(sourceObject);
+        }
+        return BounceResult.NO_OP;
+    }
+
+    private boolean isEvictDue(BounceStorageMetadata sourceObject) {
+        return isEvict() && isObjectExpired(sourceObject, evictDelay);
+    }
+
+    private boolean isCopyDue(BounceStorageMetadata sourceObject) {
+        return isCopy() && (isImmediateCopy() || isObjectExpired(sourceObject, copyDelay));
+    }
+
     @Override
     public void takeOver(String containerName) {
         takeOverInProcess = true;
-        ForkJoinPool fjp = new ForkJoinPool(100);
-        takeOverFuture = fjp.submit(() -> {
-            StreamSupport.stream(Utils.crawlBlobStore(getDestination(), containerName).spliterator(), true)
-                    .filter(sm -> !getSource().blobExists(containerName, sm.getName()))
-                    .forEach(sm -> {
-                        logger.debug("taking over blob {}", sm.getName());
-                        BlobMetadata metadata = getDestination().blobMetadata(containerName,
-                                sm.getName());
-                        BounceLink link = new BounceLink(Optional.of(metadata));
-                        getSource().putBlob(containerName, link.toBlob(getSource()));
-                    });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        takeOverFuture = executor.submit(() -> {
+            takeOverObjects(containerName);
             getSource().removeBlob(containerName, TAKEOVER_MARKER);
             takeOverInProcess = false;
+            return null;
         });
-        fjp.shutdown();
+        executor.shutdown();
+    }
+
+    /**
+     * Link the far objects missing from the near store, found by merging the
+     * listings of both stores. The progress is saved in the takeover marker
+     * every so often, so that an interrupted takeover resumes from there.
+     */
+    private void takeOverObjects(String containerName) throws IOException, InterruptedException {
+        ListContainerOptions options = new ListContainerOptions().recursive();
+        String progress = getTakeOverProgress(containerName);
+        if (progress != null) {
+            logger.info("resuming the takeover of {} after {}", containerName, progress);
+            options.afterMarker(progress);
+        }
+        MergedListing listing = new MergedListing(ImmutableList.of(
+                Utils.crawlBlobStore(getSource(), containerName, options, null, getCrawlPrefetchDepth()).iterator(),
+                Utils.crawlBlobStore(getDestination(), containerName, options, null, getCrawlPrefetchDepth())
+                        .iterator()));
+        ExecutorService executor = Executors.newFixedThreadPool(takeOverConcurrency);
+        Semaphore inFlight = new Semaphore(takeOverConcurrency);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        try {
+            long scanned = 0;
+            while (listing.hasNext() && failure.get() == null) {
+                StorageMetadata[] row = listing.next();
+                StorageMetadata farMeta = row[1];
+                String name = row[0] != null ? row[0].getName() : farMeta.getName();
+                if (row[0] == null && !name.startsWith(INTERNAL_PREFIX)) {
+                    inFlight.acquire();
+                    executor.execute(() -> {
+                        try {
+                            BlobMetadata metadata = getLinkMetadata(containerName, farMeta);
+                            if (metadata == null) {
+                                // removed since it was listed
+                                return;
+                            }
+                            logger.debug("taking over blob {}", name);
+                            BounceLink link = new BounceLink(Optional.of(metadata));
+                            getSource().putBlob(containerName, link.toBlob(getSource()));
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+                if (++scanned % TAKEOVER_CHECKPOINT_INTERVAL == 0) {
+                    // every link up to here has to exist before the progress is saved
+                    inFlight.acquire(takeOverConcurrency);
+                    inFlight.release(takeOverConcurrency);
+                    if (failure.get() == null) {
+                        saveTakeOverProgress(containerName, name);
+                    }
+                }
+            }
+            inFlight.acquire(takeOverConcurrency);
+        } finally {
+            executor.shutdown();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Return the metadata to link to for a far listing entry, or null if the
+     * object is gone. Links serve the content metadata of their object, which
+     * most listings leave out, so the object is looked up unless the entry
+     * has it.
+     */
+    private BlobMetadata getLinkMetadata(String containerName, StorageMetadata farMeta) {
+        BlobMetadata metadata;
+        if (farMeta instanceof BlobMetadata &&
+                ((BlobMetadata) farMeta).getContentMetadata().getContentType() != null) {
+            metadata = (BlobMetadata) farMeta;
+        } else {
+            metadata = getDestination().blobMetadata(containerName, farMeta.getName());
+            if (metadata == null) {
+                return null;
+            }
+        }
+        MutableBlobMetadata mutable = new MutableBlobMetadataImpl(metadata);
+        if (mutable.getContainer() == null) {
+            mutable.setContainer(containerName);
+        }
+        if (mutable.getContentMetadata().getContentLength() == null) {
+            mutable.getContentMetadata().setContentLength(farMeta.getSize());
+        }
+        return mutable;
+    }
+
+    private String getTakeOverProgress(String containerName) throws IOException {
+        Blob marker = getSource().getBlob(containerName, TAKEOVER_MARKER);
+        if (marker == null) {
+            return null;
+        }
+        String progress = Strings2.toStringAndClose(marker.getPayload().openStream());
+        return progress.isEmpty() ? null : progress;
     }
 
+    private void saveTakeOverProgress(String containerName, String name) {
+        byte[] progress = name.getBytes(StandardCharsets.UTF_8);
+        getSource().putBlob(containerName, getSource().blobBuilder(TAKEOVER_MARKER)
+                .payload(ByteSource.wrap(progress))
+                .contentLength(progress.length)
+                .build());
+    }
+
+    /**
+     * Check a random sample of the first far listing page against the near
+     * store before the container is served, and the rest of the page in the
+     * background. Discrepancies found in the background start a takeover.
+     */
     @Override
     public boolean sanityCheck(String containerName) {
         if (getSource().blobExists(containerName, TAKEOVER_MARKER)) {
             return false;
         }
 
-        PageSet<? extends StorageMetadata> res = getDestination().list(containerName);
+        List<StorageMetadata> farObjects = new ArrayList<>(getDestination().list(containerName));
+        Collections.shuffle(farObjects);
+        int sampleSize = Math.min(sanityCheckSampleSize, farObjects.size());
+        if (!checkObjects(containerName, farObjects.subList(0, sampleSize)).join()) {
+            putTakeOverMarker(containerName);
+            return false;
+        }
 
-        ForkJoinPool fjp = new ForkJoinPool(100);
-        try {
-            boolean sane = !fjp.submit(() -> {
-                return res.stream().parallel().map(sm -> {
-                    BlobMetadata meta = blobMetadata(containerName, sm.getName());
-                    return !Utils.equalsOtherThanTime(sm, meta);
-                }).anyMatch(Boolean::booleanValue);
-            }).get();
-
-            if (!sane) {
-                Blob b = getSource().blobBuilder(TAKEOVER_MARKER)
-                        .payload(ByteSource.empty())
-                        .build();
-                getSource().putBlob(containerName, b);
-            }
-            return sane;
-        } catch (InterruptedException | ExecutionException e) {
-            throw propagate(e);
-        } finally {
-            fjp.shutdown();
+        List<StorageMetadata> rest = farObjects.subList(sampleSize, farObjects.size());
+        if (!rest.isEmpty()) {
+            checkObjects(containerName, rest).whenComplete((sane, e) -> {
+                if (e != null) {
+                    logger.error("sanity check of " + containerName + " failed", e);
+                } else if (!sane && !takeOverInProcess) {
+                    logger.warn("{} is out of sync with its far store, taking it over", containerName);
+                    putTakeOverMarker(containerName);
+                    takeOver(containerName);
+                }
+            });
         }
+        return true;
+    }
+
+    /** Return whether the near store agrees with every far object, checked on the shared pool. */
+    private CompletableFuture<Boolean> checkObjects(String containerName, List<StorageMetadata> farObjects) {
+        List<CompletableFuture<Boolean>> checks = farObjects.stream()
+                .map(sm -> CompletableFuture.supplyAsync(
+                        () -> Utils.equalsOtherThanTime(sm, blobMetadata(containerName, sm.getName())),
+                        SANITY_CHECK_EXECUTOR))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[checks.size()]))
+                .thenApply(ignored -> checks.stream().allMatch(CompletableFuture::join));
+    }
+
+    private void putTakeOverMarker(String containerName) {
+        Blob b = getSource().blobBuilder(TAKEOVER_MARKER)
+                .payload(ByteSource.empty())
+                .build();
+        getSource().putBlob(containerName, b);
     }
 
     protected boolean isObjectExpired(StorageMetadata metadata, Duration duration) {
@@ -395,31 +680,88 @@ public class WriteBackPolicy extends BouncePolicy {
         String name = blob.getMetadata().getName();
         logger.debug("piping {} from {} to {}", name, getDestStoreName(), getSourceStoreName());
 
-        PipedInputStream pipeIn = new PipedInputStream();
-        PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
-
+        // the client reads from the first consumer, the copy to the source from the second
         Payload blobPayload = blob.getPayload();
+        RingBufferTee tee = new RingBufferTee(name, blobPayload.openStream(), teeBufferSize, 2);
         MutableContentMetadata contentMetadata = blob.getMetadata().getContentMetadata();
         Blob retBlob = new BlobImpl(replaceSystemMetadata(blob.getMetadata()));
-        retBlob.setPayload(pipeIn);
+        retBlob.setPayload(tee.getStream(0));
         retBlob.setAllHeaders(blob.getAllHeaders());
-        TeeInputStream tee = new TeeInputStream(blobPayload.openStream(), pipeOut, true);
         retBlob.getMetadata().setContentMetadata(contentMetadata);
 
+        InputStream copyStream = tee.getStream(1);
         app.executeBackgroundTask(() -> {
             try {
                 logger.debug("copying {} to tee stream", name);
-                return Utils.copyBlob(getDestination(), getSource(), container, blob, tee);
+                return Utils.copyBlob(getDestination(), getSource(), container, blob, copyStream);
+            } catch (DigestMismatchException e) {
+                logger.error("copy of " + name + " to tee stream is corrupt", e);
+                restoreLinkOverCopy(container, name, e.getCopyETag());
+                throw e;
             } catch (RuntimeException e) {
                 logger.error("copying " + name + " to tee stream failed", e);
                 throw e;
             } finally {
-                tee.close();
+                copyStream.close();
+                logger.debug("piped {}, client waited {} ms for the copy, copy waited {} ms for the client",
+                        name, tee.getConsumerWaitMillis(0), tee.getConsumerWaitMillis(1));
             }
         });
         return retBlob;
     }
 
+    /**
+     * Copy an object that is only in the far store back to the near store, if
+     * it is still a link and nothing else is operating on it.
+     */
+    private boolean promoteObject(String container, String blobName) throws IOException {
+        try (ReconcileLocker.LockKey ignored = reconcileLocker.lockObject(container, blobName, true)) {
+            BlobMetadata meta = getSource().blobMetadata(container, blobName);
+            if (meta == null || !BounceLink.isLink(meta)) {
+                return false;
+            }
+            logger.debug("unbouncing {} from {} to {}", blobName, getDestStoreName(), getSourceStoreName());
+            try {
+                return Utils.copyBlob(getDestination(), getSource(), container, container, blobName) != null;
+            } catch (DigestMismatchException e) {
+                restoreLink(container, blobName);
+                throw e;
+            }
+        } catch (ServiceUnavailableException e) {
+            logger.debug("{} is busy, not promoting it", blobName);
+            return false;
+        }
+    }
+
+    /**
+     * Replace the corrupt copy of a far object that a read wrote with a link
+     * again, unless the object was written or is being reconciled since.
+     */
+    private void restoreLinkOverCopy(String container, String blobName, String copyETag) {
+        if (copyETag == null) {
+            logger.warn("cannot tell the corrupt copy of {} from a later write, leaving it", blobName);
+            return;
+        }
+        try (ReconcileLocker.LockKey ignored = reconcileLocker.lockObject(container, blobName, true)) {
+            BlobMetadata meta = getSource().blobMetadata(container, blobName);
+            if (meta == null || BounceLink.isLink(meta) || !eTagsEqual(meta.getETag(), copyETag)) {
+                logger.debug("{} changed since its corrupt copy, not restoring its link", blobName);
+                return;
+            }
+            restoreLink(container, blobName);
+        } catch (ServiceUnavailableException e) {
+            logger.warn("{} is busy, not restoring its link over its corrupt copy", blobName);
+        }
+    }
+
+    /** Replace a copy of a far object that does not match it with a link to it again. */
+    private void restoreLink(String container, String blobName) {
+        BlobMetadata farMeta = getDestination().blobMetadata(container, blobName);
+        if (farMeta != null) {
+            Utils.createBounceLink(getSource(), replaceSystemMetadata(farMeta));
+        }
+    }
+
     private String getSourceStoreName() {
         return getSource().getContext().unwrap().getId();
     }
@@ -503,11 +845,11 @@ public class WriteBackPolicy extends BouncePolicy {
                     blob = getDestination().getBlob(container, blobName, GetOptions.NONE);
                     return pipeBlobAndReturn(container, blob);
                 } else {
-                    // fallback to the dumb thing and do double streaming
-                    logger.debug("unbouncing {} from {} to {}", blobName, getDestStoreName(), getSourceStoreName());
-                    Utils.copyBlob(getDestination(), getSource(), container, container, blobName);
-                    logger.debug("returning unbounced blob {}", blobName);
-                    blob = getSource().getBlob(container, blobName, options);
+                    // serve ranges from the far store instead of copying the whole object back first
+                    blob = getDestination().getBlob(container, blobName, options);
+                    if (blob != null && app != null && promoteOnPartialRead) {
+                        app.executeBackgroundTask(BackendThrottle.background(() -> promoteObject(container, blobName)));
+                    }
                 }
             } catch (IOException e) {
                 e.printStackTrace();
@@ -555,11 +897,25 @@ public class WriteBackPolicy extends BouncePolicy {
         BlobMetadata meta = getSource().blobMetadata(container, blobName);
         if (meta != null) {
             if (BounceLink.isLink(meta)) {
+                try {
+                    BounceLink inline = BounceLink.fromMetadata(meta);
+                    if (inline != null) {
+                        return inline.getBlobMetadata();
+                    }
+                } catch (IOException e) {
+                    throw propagate(e);
+                }
+                BlobMetadata cached = linkCache.get(container, blobName, meta.getETag());
+                if (cached != null) {
+                    return cached;
+                }
                 Blob linkBlob = getSource().getBlob(container, blobName);
                 if (linkBlob != null) {
                     if (BounceLink.isLink(linkBlob.getMetadata())) {
                         try {
-                            return BounceLink.fromBlob(linkBlob).getBlobMetadata();
+                            BlobMetadata linkMeta = BounceLink.fromBlob(linkBlob).getBlobMetadata();
+                            linkCache.put(container, blobName, linkBlob.getMetadata().getETag(), linkMeta);
+                            return linkMeta;
                         } catch (IOException e) {
                             throw propagate(e);
                         }
@@ -577,18 +933,39 @@ public class WriteBackPolicy extends BouncePolicy {
         }
     }
 
+    /** Return whether moving the object would link, move, or leave it alone. */
+    protected final BounceResult planMove(BounceStorageMetadata sourceObject, StorageMetadata destinationObject) {
+        if (sourceObject.getRegions().equals(BounceStorageMetadata.FAR_ONLY)) {
+            return BounceResult.NO_OP;
+        }
+        if (sourceObject.getRegions().containsAll(BounceStorageMetadata.EVERYWHERE) && destinationObject != null) {
+            return BounceResult.LINK;
+        }
+        return BounceResult.MOVE;
+    }
+
+    /** Return whether copying the object would copy it or leave it alone. */
+    protected final BounceResult planCopy(BounceStorageMetadata sourceObject) {
+        if (sourceObject.getRegions().equals(BounceStorageMetadata.FAR_ONLY) ||
+                sourceObject.getRegions().equals(BounceStorageMetadata.EVERYWHERE)) {
+            return BounceResult.NO_OP;
+        }
+        return BounceResult.COPY;
+    }
+
     protected final BounceResult maybeMoveObject(String container, BounceStorageMetadata sourceObject,
             StorageMetadata destinationObject) throws IOException {
-        if (sourceObject.getRegions().equals(BounceStorageMetadata.FAR_ONLY)) {
+        BounceResult plan = planMove(sourceObject, destinationObject);
+        if (plan == BounceResult.NO_OP) {
             return BounceResult.NO_OP;
         }
-        if (sourceObject.getRegions().containsAll(BounceStorageMetadata.EVERYWHERE)) {
+        if (plan == BounceResult.LINK) {
             BlobMetadata sourceMetadata = getSource().blobMetadata(container, sourceObject.getName());
             BlobMetadata destinationMetadata = getDestination().blobMetadata(container, destinationObject.getName());
 
             if (sourceMetadata != null && destinationMetadata != null) {
                 Utils.createBounceLink(getSource(), sourceMetadata);
-                removeMarkerBlob(container, sourceObject.getName());
+                markClean(container, sourceObject.getName(), sourceObject.hasMarkerBlob());
                 return BounceResult.LINK;
             }
         }
@@ -596,7 +973,7 @@ public class WriteBackPolicy extends BouncePolicy {
         logger.debug("moving {}", sourceObject.getName());
         Utils.copyBlobAndCreateBounceLink(getSource(), getDestination(), container,
                 sourceObject.getName());
-        removeMarkerBlob(container, sourceObject.getName());
+        markClean(container, sourceObject.getName(), sourceObject.hasMarkerBlob());
         return BounceResult.MOVE;
     }
 
@@ -609,16 +986,23 @@ public class WriteBackPolicy extends BouncePolicy {
         if (takeOverInProcess) {
             return getDestination().list(s, listContainerOptions);
         }
-        PeekingIterator<StorageMetadata> nearPage = Iterators.peekingIterator(
-                Utils.crawlBlobStore(getSource(), s, listContainerOptions).iterator());
-        PeekingIterator<StorageMetadata> farPage = Iterators.peekingIterator(
-                Utils.crawlBlobStore(getDestination(), s, listContainerOptions).iterator());
-        TreeMap<String, BounceStorageMetadata> contents = new TreeMap<>();
+        // a page rarely needs a second list of either tier, so prefetching
+        // would double the list requests; bounces prefetch pages of this list
+        MergedListing listing = new MergedListing(ImmutableList.of(
+                Utils.crawlBlobStore(getSource(), s, listContainerOptions).iterator(),
+                Utils.crawlBlobStore(getDestination(), s, listContainerOptions).iterator()));
+        List<BounceStorageMetadata> contents = new ArrayList<>();
         int maxResults = listContainerOptions.getMaxResults() == null ?
                 1000 : listContainerOptions.getMaxResults();
 
-        while (nearPage.hasNext() && contents.size() < maxResults) {
-            StorageMetadata nearMeta = nearPage.next();
+        while (!listing.isExhausted(0) && contents.size() < maxResults) {
+            StorageMetadata[] row = listing.next();
+            StorageMetadata nearMeta = row[0];
+            StorageMetadata farMeta = row[1];
+            if (nearMeta == null) {
+                logger.debug("skipping far blob: {}", farMeta.getName());
+                continue;
+            }
             String name = nearMeta.getName();
 
             if (name.startsWith(INTERNAL_PREFIX) || isSwiftSegmentBlob(name)) {
@@ -627,58 +1011,30 @@ public class WriteBackPolicy extends BouncePolicy {
 
             logger.debug("found near blob: {}", name);
             if (WriteBackPolicy.isMarkerBlob(name)) {
-                BounceStorageMetadata meta = contents.get(WriteBackPolicy.markerBlobGetName(name));
-                if (meta != null) {
-                    meta.hasMarkerBlob(true);
-                }
+                setMarkerBlob(contents, name);
                 logger.debug("skipping marker blob: {}", name);
                 continue;
             }
 
-            int compare = -1;
-            StorageMetadata farMeta = null;
-            while (farPage.hasNext()) {
-                farMeta = farPage.peek();
-                compare = name.compareTo(farMeta.getName());
-                if (compare <= 0) {
-                    break;
-                } else {
-                    farPage.next();
-                    logger.debug("skipping far blob: {}", farMeta.getName());
-                }
-            }
-
-            if (farMeta != null && isSwiftSegmentBlob(farMeta.getName())) {
-                continue;
-            }
-
-            if (compare == 0) {
-                farPage.next();
+            if (farMeta != null) {
                 logger.debug("found far blob with the same name: {}", name);
-                boolean nextIsMarker = false;
-                if (nearPage.hasNext()) {
-                    StorageMetadata next = nearPage.peek();
-                    logger.debug("next blob: {}", next.getName());
-                    if (next.getName().equals(name + LOG_MARKER_SUFFIX)) {
-                        nextIsMarker = true;
-                    }
-                }
+                boolean nextIsMarker = (name + LOG_MARKER_SUFFIX).equals(listing.peekName());
 
                 BounceStorageMetadata meta;
                 ImmutableSet<BounceStorageMetadata.Region> farRegions = translateRegions(farMeta);
 
-                if (nextIsMarker) {
-                    if (BounceLink.isLink(getSource().blobMetadata(s, name))) {
+                if (nextIsMarker || isDirty(s, name)) {
+                    // the near object was written again, but the write may not have replaced the link
+                    if (BounceLink.mayBeLink(nearMeta) && BounceLink.isLink(getSource().blobMetadata(s, name))) {
                         meta = new BounceStorageMetadata(farMeta, farRegions);
                         meta.setLinkSize(nearMeta.getSize());
                     } else {
                         meta = new BounceStorageMetadata(nearMeta, BounceStorageMetadata.NEAR_ONLY);
                     }
 
-                    meta.hasMarkerBlob(true);
-                    contents.put(name, meta);
+                    meta.hasMarkerBlob(nextIsMarker);
                 } else {
-                    if (Objects.equals(nearMeta.getSize(), farMeta.getSize())) {
+                    if (Objects.equals(nearMeta.getSize(), farMeta.getSize()) && !isEmptyLink(s, nearMeta)) {
                         meta = new BounceStorageMetadata(nearMeta,
                                 new ImmutableSet.Builder<BounceStorageMetadata.Region>()
                                         .add(BounceStorageMetadata.Region.NEAR)
@@ -694,26 +1050,46 @@ public class WriteBackPolicy extends BouncePolicy {
                     }
                 }
 
-                contents.put(name, meta);
+                contents.add(meta);
             } else {
-                contents.put(name, new BounceStorageMetadata(nearMeta, BounceStorageMetadata.NEAR_ONLY));
+                contents.add(new BounceStorageMetadata(nearMeta, BounceStorageMetadata.NEAR_ONLY));
             }
         }
 
-        if (nearPage.hasNext()) {
-            StorageMetadata nearMeta = nearPage.next();
-            String name = nearMeta.getName();
-
-            logger.debug("found near blob: {}", name);
-            if (WriteBackPolicy.isMarkerBlob(name)) {
-                BounceStorageMetadata meta = contents.get(WriteBackPolicy.markerBlobGetName(name));
-                if (meta != null) {
-                    meta.hasMarkerBlob(true);
+        if (!listing.isExhausted(0)) {
+            StorageMetadata nearMeta = listing.next()[0];
+            if (nearMeta != null) {
+                logger.debug("found near blob: {}", nearMeta.getName());
+                if (WriteBackPolicy.isMarkerBlob(nearMeta.getName())) {
+                    setMarkerBlob(contents, nearMeta.getName());
                 }
             }
         }
 
-        return new PageSetImpl<>(contents.values(), contents.isEmpty() ? null : contents.lastKey());
+        return new PageSetImpl<>(contents, contents.isEmpty() ? null : contents.get(contents.size() - 1).getName());
+    }
+
+    /**
+     * Return whether the listed near object is an inline link, whose empty
+     * payload has the same size as an empty far object.
+     */
+    private boolean isEmptyLink(String container, StorageMetadata nearMeta) {
+        if (!Objects.equals(nearMeta.getSize(), 0L)) {
+            return false;
+        }
+        BlobMetadata metadata = getSource().blobMetadata(container, nearMeta.getName());
+        return metadata != null && BounceLink.isLink(metadata);
+    }
+
+    /** Flag the last listed object if the marker blob is its own. */
+    private static void setMarkerBlob(List<BounceStorageMetadata> contents, String marker) {
+        if (contents.isEmpty()) {
+            return;
+        }
+        BounceStorageMetadata meta = contents.get(contents.size() - 1);
+        if (meta.getName().equals(WriteBackPolicy.markerBlobGetName(marker))) {
+            meta.hasMarkerBlob(true);
+        }
     }
 
     private ImmutableSet<BounceStorageMetadata.Region> translateRegions(StorageMetadata farMetadata) {
@@ -732,16 +1108,13 @@ public class WriteBackPolicy extends BouncePolicy {
 
     protected final BounceResult maybeCopyObject(String container, BounceStorageMetadata sourceObject,
             StorageMetadata destinationObject) throws IOException {
-        if (sourceObject.getRegions().equals(BounceStorageMetadata.FAR_ONLY)) {
-            return BounceResult.NO_OP;
-        }
-        if (sourceObject.getRegions().equals(BounceStorageMetadata.EVERYWHERE)) {
+        if (planCopy(sourceObject) == BounceResult.NO_OP) {
             return BounceResult.NO_OP;
         }
 
         logger.debug("copying {} to far store", sourceObject.getName());
         Utils.copyBlob(getSource(), getDestination(), container, container, sourceObject.getName());
-        removeMarkerBlob(container, sourceObject.getName());
+        markClean(container, sourceObject.getName(), sourceObject.hasMarkerBlob());
         return BounceResult.COPY;
     }
 
@@ -765,4 +1138,28 @@ public class WriteBackPolicy extends BouncePolicy {
         }
         return copyDelay.isZero();
     }
+
+    /** The state of an object in the source and destination tiers, either of which may be null. */
+    public static final class ObjectState {
+        private final BounceStorageMetadata source;
+        private final BlobMetadata destination;
+
+        ObjectState(BounceStorageMetadata source, BlobMetadata destination) {
+            this.source = source;
+            this.destination = destination;
+        }
+
+        public BounceStorageMetadata getSource() {
+            return source;
+        }
+
+        public BlobMetadata getDestination() {
+            return destination;
+        }
+
+        /** Return the size of the object, as the source has it if it is there. */
+        public long getSize() {
+            return source != null ? source.getSize() : destination.getSize();
+        }
+    }
 }
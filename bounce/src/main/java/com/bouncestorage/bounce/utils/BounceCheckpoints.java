@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Local store of bounce progress. A crawl of a keyspace is a list of marker
+ * ranges; for every range the checkpoint records the last key up to which
+ * every object was reconciled, so that a bounce interrupted by an abort or a
+ * restart resumes after that key instead of crawling the range again.
+ */
+public final class BounceCheckpoints {
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    private final Path directory;
+
+    public BounceCheckpoints(Path directory) throws IOException {
+        this.directory = requireNonNull(directory);
+        Files.createDirectories(directory);
+    }
+
+    /** Return the ranges of the interrupted crawl of the keyspace, or null if there is none. */
+    @Nullable
+    public synchronized List<Range> load(String keyspace) {
+        Path path = getPath(keyspace);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw propagate(e);
+        }
+        int count = Integer.parseInt(properties.getProperty("ranges", "0"));
+        ImmutableList.Builder<Range> builder = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            String prefix = "range." + i + ".";
+            builder.add(Range.create(properties.getProperty(prefix + "start"),
+                    properties.getProperty(prefix + "end"),
+                    properties.getProperty(prefix + "marker"),
+                    Boolean.parseBoolean(properties.getProperty(prefix + "done"))));
+        }
+        return builder.build();
+    }
+
+    public synchronized void save(String keyspace, List<Range> ranges) {
+        Properties properties = new Properties();
+        properties.setProperty("ranges", Integer.toString(ranges.size()));
+        for (int i = 0; i < ranges.size(); i++) {
+            String prefix = "range." + i + ".";
+            Range range = ranges.get(i);
+            setIfNotNull(properties, prefix + "start", range.getStartMarker());
+            setIfNotNull(properties, prefix + "end", range.getEndMarker());
+            setIfNotNull(properties, prefix + "marker", range.getMarker());
+            properties.setProperty(prefix + "done", Boolean.toString(range.isDone()));
+        }
+        Path path = getPath(keyspace);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, keyspace);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw propagate(e);
+        }
+    }
+
+    /** Forget the checkpoint once the whole keyspace was crawled. */
+    public synchronized void clear(String keyspace) {
+        try {
+            Files.deleteIfExists(getPath(keyspace));
+        } catch (IOException e) {
+            throw propagate(e);
+        }
+    }
+
+    private Path getPath(String keyspace) {
+        try {
+            return directory.resolve(URLEncoder.encode(keyspace, StandardCharsets.UTF_8.name()) + CHECKPOINT_SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            throw propagate(e);
+        }
+    }
+
+    private static void setIfNotNull(Properties properties, String key, @Nullable String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    /**
+     * A crawled range, exclusive of the start marker and inclusive of the end
+     * marker, and the last key of the range that was reconciled.
+     */
+    @AutoValue
+    public abstract static class Range {
+        public static Range create(@Nullable String startMarker, @Nullable String endMarker,
+                                   @Nullable String marker, boolean done) {
+            return new AutoValue_BounceCheckpoints_Range(startMarker, endMarker, marker, done);
+        }
+
+        @Nullable
+        public abstract String getStartMarker();
+        @Nullable
+        public abstract String getEndMarker();
+        @Nullable
+        public abstract String getMarker();
+        public abstract boolean isDone();
+    }
+
+    /**
+     * Tracks the keys of a range that are being reconciled concurrently. The
+     * watermark only advances past a key once it and every key before it
+     * completed, so resuming after the watermark never skips an object.
+     */
+    public static final class Watermark {
+        private final Map<String, Boolean> inflight = new LinkedHashMap<>();
+        private String marker;
+
+        public Watermark(@Nullable String marker) {
+            this.marker = marker;
+        }
+
+        /** Must be called in crawl order. */
+        public synchronized void begin(String key) {
+            inflight.put(key, false);
+        }
+
+        public synchronized void complete(String key) {
+            inflight.replace(key, true);
+            Iterator<Map.Entry<String, Boolean>> it = inflight.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Boolean> entry = it.next();
+                if (!entry.getValue()) {
+                    break;
+                }
+                marker = entry.getKey();
+                it.remove();
+            }
+        }
+
+        @Nullable
+        public synchronized String getMarker() {
+            return marker;
+        }
+    }
+
+    /** Snapshot of the ranges of a crawl, updated as ranges make progress. */
+    public static final class Progress {
+        private final List<Range> ranges;
+
+        public Progress(List<Range> ranges) {
+            this.ranges = new ArrayList<>(ranges);
+        }
+
+        public synchronized void update(int index, @Nullable String marker, boolean done) {
+            Range range = ranges.get(index);
+            ranges.set(index, Range.create(range.getStartMarker(), range.getEndMarker(), marker, done));
+        }
+
+        public synchronized List<Range> getRanges() {
+            return ImmutableList.copyOf(ranges);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local, append-only journal of the keys that were modified in each
+ * container. Every container has an active segment that receives appends;
+ * taking a batch seals the active segment so that the keys can be reconciled
+ * while new changes keep being journaled. Sealed segments are only deleted
+ * once the batch is committed, so a crash replays them.
+ */
+public final class ChangeJournal implements Closeable {
+    private static final String ACTIVE_SEGMENT = "active.journal";
+    private static final String SEALED_SUFFIX = ".sealed";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Path directory;
+    private final ConcurrentMap<String, ContainerJournal> journals = new ConcurrentHashMap<>();
+    private final AtomicLong sealSequence = new AtomicLong();
+
+    public ChangeJournal(Path directory) throws IOException {
+        this.directory = requireNonNull(directory);
+        Files.createDirectories(directory);
+    }
+
+    public void append(String container, String key) {
+        try {
+            getJournal(container).append(key);
+        } catch (IOException e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Seal the active segment of the container and return every key of the
+     * sealed segments that were not committed yet.
+     */
+    public Batch takeBatch(String container) throws IOException {
+        ContainerJournal journal = getJournal(container);
+        journal.seal();
+        Files.createDirectories(journal.dir);
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(journal.dir, "*" + SEALED_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        SortedSet<String> keys = new TreeSet<>();
+        for (Path segment : segments) {
+            readSegment(segment, keys);
+        }
+        logger.debug("took {} keys from {} segments of {}", keys.size(), segments.size(), container);
+        return new Batch(segments, keys);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ContainerJournal journal : journals.values()) {
+            journal.close();
+        }
+    }
+
+    private ContainerJournal getJournal(String container) {
+        return journals.computeIfAbsent(container, c -> new ContainerJournal(directory.resolve(encode(c))));
+    }
+
+    private static String encode(String container) {
+        try {
+            return URLEncoder.encode(container, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw propagate(e);
+        }
+    }
+
+    private void readSegment(Path segment, SortedSet<String> keys) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (true) {
+                keys.add(in.readUTF());
+            }
+        } catch (EOFException e) {
+            // end of segment, or a record torn by a crash
+        }
+    }
+
+    private final class ContainerJournal {
+        private final Path dir;
+        private DataOutputStream out;
+
+        ContainerJournal(Path dir) {
+            this.dir = dir;
+        }
+
+        synchronized void append(String key) throws IOException {
+            if (out == null) {
+                Files.createDirectories(dir);
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                        dir.resolve(ACTIVE_SEGMENT), StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            }
+            out.writeUTF(key);
+            out.flush();
+        }
+
+        synchronized void seal() throws IOException {
+            close();
+            Path active = dir.resolve(ACTIVE_SEGMENT);
+            if (Files.exists(active)) {
+                Files.move(active, dir.resolve(System.currentTimeMillis() + "-" +
+                        sealSequence.incrementAndGet() + SEALED_SUFFIX));
+            }
+        }
+
+        synchronized void close() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+    }
+
+    public static final class Batch {
+        private final List<Path> segments;
+        private final SortedSet<String> keys;
+
+        private Batch(List<Path> segments, SortedSet<String> keys) {
+            this.segments = ImmutableList.copyOf(segments);
+            this.keys = ImmutableSortedSet.copyOfSorted(keys);
+        }
+
+        public SortedSet<String> getKeys() {
+            return keys;
+        }
+
+        /** Forget the keys of this batch once they have been reconciled. */
+        public void commit() throws IOException {
+            for (Path segment : segments) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteSource;
+
+/**
+ * Computes the MD5 of a copy as its bytes stream through, so that the copy
+ * can be checked against the digests the stores report without reading it
+ * again. Only the bytes of the last stream opened are digested, since a
+ * retried upload opens its payload again; slices are not digested at all.
+ */
+public final class ContentDigest {
+    private static final Pattern MD5_ETAG = Pattern.compile("[0-9a-f]{32}");
+
+    private volatile HashingInputStream stream;
+    private volatile boolean sliced;
+
+    public InputStream wrap(InputStream in) {
+        HashingInputStream hashing = new HashingInputStream(Hashing.md5(), in);
+        stream = hashing;
+        return hashing;
+    }
+
+    public ByteSource wrap(ByteSource source) {
+        requireNonNull(source);
+        return new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return ContentDigest.this.wrap(source.openStream());
+            }
+
+            @Override
+            public long size() throws IOException {
+                return source.size();
+            }
+
+            @Override
+            public ByteSource slice(long offset, long length) {
+                sliced = true;
+                return source.slice(offset, length);
+            }
+        };
+    }
+
+    /** Return the MD5 of the bytes read so far, or null if they were not digested. */
+    @Nullable
+    public HashCode hash() {
+        HashingInputStream hashing = stream;
+        return hashing == null || sliced ? null : hashing.hash();
+    }
+
+    /** Return the MD5 that an etag holds, or null if it holds something else. */
+    @Nullable
+    public static HashCode md5FromETag(@Nullable String etag) {
+        if (etag == null) {
+            return null;
+        }
+        String unquoted = etag;
+        if (etag.length() >= 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+            unquoted = etag.substring(1, etag.length() - 1);
+        }
+        unquoted = unquoted.toLowerCase();
+        return MD5_ETAG.matcher(unquoted).matches() ? HashCode.fromString(unquoted) : null;
+    }
+
+    /** Return the etag that S3-like stores give a multipart upload of parts with the given MD5s. */
+    public static String multipartETag(List<HashCode> partMD5s) {
+        Hasher hasher = Hashing.md5().newHasher();
+        partMD5s.forEach(md5 -> hasher.putBytes(md5.asBytes()));
+        return hasher.hash() + "-" + partMD5s.size();
+    }
+
+    /** Throw if both digests are known and differ. */
+    public static void verify(String name, String what, @Nullable HashCode actual, @Nullable HashCode expected)
+            throws DigestMismatchException {
+        if (actual != null && expected != null && !expected.equals(actual)) {
+            throw new DigestMismatchException(String.format("MD5 %s of %s does not match %s MD5 %s",
+                    actual, name, what, expected));
+        }
+    }
+}
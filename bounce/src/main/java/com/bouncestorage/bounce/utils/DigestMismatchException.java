@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+/** Thrown when the bytes of a copy do not match a digest reported for them. */
+public final class DigestMismatchException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String copyETag;
+
+    public DigestMismatchException(String message) {
+        this(message, null);
+    }
+
+    public DigestMismatchException(String message, @Nullable String copyETag) {
+        super(message);
+        this.copyETag = copyETag;
+    }
+
+    /** Return the etag of the copy, if it was written before the mismatch was found. */
+    @Nullable
+    public String getCopyETag() {
+        return copyETag;
+    }
+}
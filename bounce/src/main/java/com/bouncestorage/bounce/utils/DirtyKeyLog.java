@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.io.CountingInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local write-ahead log of the keys whose near copy is newer than their far
+ * copy. It replaces the marker blobs of the write-back policies: marking a key
+ * dirty is durable when it returns, and concurrent writers share the fsync of
+ * the segment. Marking a key clean is not synced, a crash merely leaves the
+ * key dirty until it is reconciled again.
+ *
+ * <p>The log is a sequence of numbered segments. Once the active segment
+ * grows past the segment size, or twice the size of the dirty keys, and on
+ * startup after the segments are replayed, a new segment starts with the
+ * dirty keys and the previous segments are deleted.
+ */
+public final class DirtyKeyLog implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final byte DIRTY = 1;
+    private static final byte CLEAN = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Path directory;
+    private final long segmentSize;
+    // dirty keys of every container and the time they were last written
+    private final ConcurrentMap<String, ConcurrentSkipListMap<String, Long>> dirtyKeys =
+            new ConcurrentHashMap<>();
+    private final Object syncMonitor = new Object();
+    private long segmentNumber;
+    private long rollSize;
+    private FileChannel channel;
+    private DataOutputStream out;
+    private long appendedSequence;
+    private long syncedSequence;
+    private boolean syncInProgress;
+
+    public DirtyKeyLog(Path directory, long segmentSize) throws IOException {
+        checkArgument(segmentSize > 0, "segment size must be positive");
+        this.directory = requireNonNull(directory);
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            replay(segment, i == segments.size() - 1);
+            segmentNumber = Math.max(segmentNumber, getSegmentNumber(segment));
+        }
+        logger.info("replayed {} segments of the dirty key log, {} dirty keys", segments.size(),
+                dirtyKeys.values().stream().mapToInt(Map::size).sum());
+        synchronized (this) {
+            roll();
+        }
+    }
+
+    /** Record that the near copy of the key was written at the time, durably. */
+    public void markDirty(String container, String key, Instant time) {
+        long sequence;
+        synchronized (this) {
+            dirtyKeys.computeIfAbsent(container, c -> new ConcurrentSkipListMap<>())
+                    .put(key, time.toEpochMilli());
+            sequence = append(DIRTY, container, key, time.toEpochMilli());
+        }
+        sync(sequence);
+    }
+
+    /** Record that the far copy of the key is up to date. */
+    public void markClean(String container, String key) {
+        synchronized (this) {
+            Map<String, Long> keys = dirtyKeys.get(container);
+            if (keys == null || keys.remove(key) == null) {
+                return;
+            }
+            append(CLEAN, container, key, 0);
+        }
+    }
+
+    public boolean isDirty(String container, String key) {
+        Map<String, Long> keys = dirtyKeys.get(container);
+        return keys != null && keys.containsKey(key);
+    }
+
+    public Set<String> getContainers() {
+        return ImmutableSet.copyOf(dirtyKeys.keySet());
+    }
+
+    /** Return the dirty keys of the container and the time they were last written. */
+    public Map<String, Instant> getDirtyKeys(String container) {
+        Map<String, Long> keys = dirtyKeys.getOrDefault(container, new ConcurrentSkipListMap<>());
+        ImmutableSortedMap.Builder<String, Instant> builder = ImmutableSortedMap.naturalOrder();
+        keys.forEach((key, time) -> builder.put(key, Instant.ofEpochMilli(time)));
+        return builder.build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncMonitor) {
+            while (syncInProgress) {
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw propagate(e);
+                }
+            }
+            synchronized (this) {
+                if (out != null) {
+                    out.flush();
+                    channel.force(false);
+                    out.close();
+                    out = null;
+                }
+            }
+        }
+    }
+
+    private long append(byte type, String container, String key, long time) {
+        if (out == null) {
+            throw new IllegalStateException("dirty key log is closed");
+        }
+        try {
+            out.writeByte(type);
+            out.writeUTF(container);
+            out.writeUTF(key);
+            out.writeLong(time);
+        } catch (IOException e) {
+            throw propagate(e);
+        }
+        return ++appendedSequence;
+    }
+
+    /**
+     * Wait until the record is synced. The first waiter flushes and syncs
+     * every record appended so far on behalf of the others.
+     */
+    private void sync(long sequence) {
+        synchronized (syncMonitor) {
+            while (syncedSequence < sequence && syncInProgress) {
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw propagate(e);
+                }
+            }
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            syncInProgress = true;
+        }
+        long target = 0;
+        try {
+            FileChannel syncChannel;
+            long appended;
+            synchronized (this) {
+                out.flush();
+                syncChannel = channel;
+                appended = appendedSequence;
+            }
+            syncChannel.force(false);
+            target = appended;
+            synchronized (this) {
+                if (channel.size() >= rollSize) {
+                    roll();
+                }
+            }
+        } catch (IOException e) {
+            throw propagate(e);
+        } finally {
+            synchronized (syncMonitor) {
+                syncInProgress = false;
+                syncedSequence = Math.max(syncedSequence, target);
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /** Start a new segment with the dirty keys and delete the previous segments. */
+    private void roll() throws IOException {
+        List<Path> previous = listSegments();
+        if (out != null) {
+            out.close();
+        }
+        segmentNumber++;
+        channel = FileChannel.open(directory.resolve(String.format("%020d%s", segmentNumber, SEGMENT_SUFFIX)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        for (Map.Entry<String, ConcurrentSkipListMap<String, Long>> container : dirtyKeys.entrySet()) {
+            for (Map.Entry<String, Long> entry : container.getValue().entrySet()) {
+                append(DIRTY, container.getKey(), entry.getKey(), entry.getValue());
+            }
+        }
+        out.flush();
+        channel.force(false);
+        // the dirty keys alone may exceed the segment size
+        rollSize = Math.max(segmentSize, 2 * channel.size());
+        for (Path segment : previous) {
+            Files.delete(segment);
+        }
+    }
+
+    /**
+     * Replay the records of the segment. A crash during a sync can leave a
+     * torn or garbage tail in the last segment, which is truncated at the last
+     * complete record; earlier segments were sealed and must be intact.
+     */
+    private void replay(Path segment, boolean last) throws IOException {
+        long good = 0;
+        try (CountingInputStream counting = new CountingInputStream(
+                     new BufferedInputStream(Files.newInputStream(segment)));
+             DataInputStream in = new DataInputStream(counting)) {
+            while (true) {
+                byte type = in.readByte();
+                if (type != DIRTY && type != CLEAN) {
+                    if (!last) {
+                        throw new IOException("corrupt record in " + segment);
+                    }
+                    break;
+                }
+                String container = in.readUTF();
+                String key = in.readUTF();
+                long time = in.readLong();
+                if (type == DIRTY) {
+                    dirtyKeys.computeIfAbsent(container, c -> new ConcurrentSkipListMap<>()).put(key, time);
+                } else {
+                    Map<String, Long> keys = dirtyKeys.get(container);
+                    if (keys != null) {
+                        keys.remove(key);
+                    }
+                }
+                good = counting.getCount();
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            // end of segment, or a record torn by a crash
+        }
+        if (last && good < Files.size(segment)) {
+            logger.warn("truncating the torn tail of {} at {} bytes", segment, good);
+            try (FileChannel tail = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                tail.truncate(good);
+            }
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long getSegmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Map;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.internal.MutableBlobMetadataImpl;
+
+/**
+ * Caches the metadata of the objects that bounce links point to, for links
+ * too long to be encoded in their blob metadata, so that reading it takes a
+ * HEAD of the link instead of a HEAD and a GET. Entries are keyed by
+ * container and key, and only returned for the etag of the link they were
+ * read from, so a link that was replaced behind our back is never served
+ * stale. The cache is bounded by the approximate size of the metadata it
+ * holds.
+ */
+public final class LinkMetadataCache {
+    // rough size of a metadata object without its strings
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final Cache<Pair<String, String>, Entry> cache;
+
+    public LinkMetadataCache(long maxBytes) {
+        checkArgument(maxBytes >= 0, "cache size must not be negative");
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Pair<String, String> key, Entry entry) -> entry.weight)
+                .build();
+    }
+
+    /** Return the cached metadata of the link with the given etag, or null. */
+    public BlobMetadata get(String container, String key, String linkETag) {
+        if (linkETag == null) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(Pair.of(container, key));
+        if (entry == null || !entry.linkETag.equals(linkETag)) {
+            return null;
+        }
+        // callers are free to modify what they get
+        return new MutableBlobMetadataImpl(entry.metadata);
+    }
+
+    public void put(String container, String key, String linkETag, BlobMetadata metadata) {
+        if (linkETag == null) {
+            return;
+        }
+        cache.put(Pair.of(container, key), new Entry(linkETag, new MutableBlobMetadataImpl(metadata)));
+    }
+
+    public void invalidate(String container, String key) {
+        cache.invalidate(Pair.of(container, key));
+    }
+
+    @VisibleForTesting
+    long size() {
+        return cache.size();
+    }
+
+    private static final class Entry {
+        private final String linkETag;
+        private final BlobMetadata metadata;
+        private final int weight;
+
+        Entry(String linkETag, BlobMetadata metadata) {
+            this.linkETag = requireNonNull(linkETag);
+            this.metadata = requireNonNull(metadata);
+            int size = ENTRY_OVERHEAD + linkETag.length() + metadata.getName().length();
+            if (metadata.getETag() != null) {
+                size += metadata.getETag().length();
+            }
+            for (Map.Entry<String, String> entry : metadata.getUserMetadata().entrySet()) {
+                size += entry.getKey().length() + entry.getValue().length();
+            }
+            this.weight = size;
+        }
+    }
+}
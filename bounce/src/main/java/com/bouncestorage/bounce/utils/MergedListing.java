@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+import org.jclouds.blobstore.domain.StorageMetadata;
+
+/**
+ * Merge-joins the sorted listings of several tiers in a single pass. Every
+ * row holds the entries with the next smallest name, indexed by tier, with
+ * null for the tiers that do not have that name. To keep listings cheap, the
+ * row array is reused by the next call to {@link #next()}.
+ */
+public final class MergedListing implements Iterator<StorageMetadata[]> {
+    private final List<PeekingIterator<StorageMetadata>> tiers;
+    private final StorageMetadata[] row;
+
+    public MergedListing(List<? extends Iterator<StorageMetadata>> tiers) {
+        checkArgument(!tiers.isEmpty(), "there must be at least one tier");
+        this.tiers = tiers.stream()
+                .map(Iterators::peekingIterator)
+                .collect(Collectors.toList());
+        this.row = new StorageMetadata[tiers.size()];
+    }
+
+    @Override
+    public boolean hasNext() {
+        for (PeekingIterator<StorageMetadata> tier : tiers) {
+            if (tier.hasNext()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return whether every entry of the tier was returned. */
+    public boolean isExhausted(int tier) {
+        return !tiers.get(tier).hasNext();
+    }
+
+    /** Return the name of the next row, or null at the end of the listings. */
+    public String peekName() {
+        String name = null;
+        for (PeekingIterator<StorageMetadata> tier : tiers) {
+            if (tier.hasNext()) {
+                String tierName = tier.peek().getName();
+                if (name == null || tierName.compareTo(name) < 0) {
+                    name = tierName;
+                }
+            }
+        }
+        return name;
+    }
+
+    @Override
+    public StorageMetadata[] next() {
+        String name = peekName();
+        if (name == null) {
+            throw new NoSuchElementException();
+        }
+        for (int i = 0; i < row.length; i++) {
+            PeekingIterator<StorageMetadata> tier = tiers.get(i);
+            if (tier.hasNext() && tier.peek().getName().equals(name)) {
+                row[i] = tier.next();
+            } else {
+                row[i] = null;
+            }
+        }
+        return row;
+    }
+}
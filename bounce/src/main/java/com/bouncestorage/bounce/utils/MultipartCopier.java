@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.bouncestorage.bounce.Utils;
+import com.bouncestorage.bounce.admin.BackendThrottle;
+import com.google.common.base.Throwables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.math.LongMath;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.io.payloads.ByteSourcePayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies objects between stores as multipart uploads, fetching the ranges of
+ * the parts and uploading them concurrently. The bytes of the parts being
+ * copied by every copy are bounded by a shared budget, failed parts are
+ * retried on their own, and interrupting the copying thread cancels the copy
+ * and aborts its upload. Parts are checked against the etags the store
+ * reports for them when those are MD5s.
+ */
+public final class MultipartCopier {
+    // the budget is counted in units to fit in a semaphore
+    private static final long BUDGET_UNIT = 1024 * 1024;
+    private static final long RETRY_DELAY_MS = 100;
+    // smaller parts cost more in requests than they gain in parallelism
+    private static final long MIN_PART_SIZE = 8 * 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ExecutorService executor;
+    private final Semaphore budget;
+    private final int budgetUnits;
+    private final int maxAttempts;
+
+    public MultipartCopier(ExecutorService executor, long maxInFlightBytes, int maxAttempts) {
+        checkArgument(maxInFlightBytes >= BUDGET_UNIT, "in-flight budget must be at least %s bytes", BUDGET_UNIT);
+        checkArgument(maxAttempts > 0, "there must be at least one attempt per part");
+        this.executor = requireNonNull(executor);
+        this.budgetUnits = (int) Math.min(Integer.MAX_VALUE, maxInFlightBytes / BUDGET_UNIT);
+        this.budget = new Semaphore(budgetUnits, true);
+        this.maxAttempts = maxAttempts;
+    }
+
+    /** Return the part size to upload an object of the given size with. */
+    public static long getPartSize(BlobStore to, long size) {
+        long partSize = Math.max(Math.max(MIN_PART_SIZE, to.getMinimumMultipartPartSize()),
+                LongMath.divide(size, to.getMaximumNumberOfParts(), RoundingMode.CEILING));
+        return Math.min(partSize, to.getMaximumMultipartPartSize());
+    }
+
+    /**
+     * Copy the object in containerFrom named after metadata to containerTo.
+     * The metadata, including the content length, is that of the copy.
+     *
+     * @return the etag of the copy
+     */
+    public String copy(BlobStore from, String containerFrom, BlobStore to, String containerTo,
+                       BlobMetadata metadata) throws IOException {
+        String name = metadata.getName();
+        long size = metadata.getContentMetadata().getContentLength();
+        checkArgument(size > 0, "cannot copy empty object %s in parts", name);
+        long partSize = getPartSize(to, size);
+        int partCount = (int) LongMath.divide(size, partSize, RoundingMode.CEILING);
+        logger.debug("copying {} in {} parts of {} bytes", name, partCount, partSize);
+
+        boolean verify = Utils.hasContentETags(to);
+        // the parts are copied on other threads, which have to be throttled like this one
+        boolean background = BackendThrottle.isBackground();
+        MultipartUpload upload = to.initiateMultipartUpload(containerTo, metadata);
+        List<Future<MultipartPart>> parts = new ArrayList<>(partCount);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        boolean completed = false;
+        try {
+            for (int i = 0; i < partCount && failure.get() == null; i++) {
+                long offset = i * partSize;
+                long length = Math.min(partSize, size - offset);
+                int partNumber = i + 1;
+                // a part larger than the whole budget waits for every other part
+                int units = (int) Math.min(budgetUnits, LongMath.divide(length, BUDGET_UNIT, RoundingMode.CEILING));
+                Callable<MultipartPart> task = () -> {
+                    try {
+                        return copyPart(from, containerFrom, name, to, upload, partNumber, offset, length, verify);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        throw t;
+                    } finally {
+                        budget.release(units);
+                    }
+                };
+                budget.acquire(units);
+                try {
+                    parts.add(executor.submit(background ? BackendThrottle.background(task) : task));
+                } catch (RejectedExecutionException e) {
+                    budget.release(units);
+                    throw e;
+                }
+            }
+
+            List<MultipartPart> uploaded = new ArrayList<>(partCount);
+            List<HashCode> partMD5s = new ArrayList<>(partCount);
+            for (Future<MultipartPart> part : parts) {
+                MultipartPart uploadedPart = part.get();
+                uploaded.add(uploadedPart);
+                partMD5s.add(ContentDigest.md5FromETag(uploadedPart.partETag()));
+            }
+            String etag = to.completeMultipartUpload(upload, uploaded);
+            completed = true;
+            if (verify && !partMD5s.contains(null) && etag != null && etag.contains("-")) {
+                // the etag covers the parts the store assembled, in order
+                String expected = ContentDigest.multipartETag(partMD5s);
+                if (!etag.replace("\"", "").equalsIgnoreCase(expected)) {
+                    throw new DigestMismatchException("etag " + etag + " of " + name + " does not match its parts " +
+                            expected);
+                }
+            }
+            return etag;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("copy of " + name + " cancelled");
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw propagate(e.getCause());
+        } finally {
+            if (!completed) {
+                parts.forEach(part -> part.cancel(true));
+                try {
+                    to.abortMultipartUpload(upload);
+                } catch (RuntimeException e) {
+                    logger.warn("failed to abort the upload of " + name, e);
+                }
+            }
+        }
+    }
+
+    private MultipartPart copyPart(BlobStore from, String containerFrom, String name, BlobStore to,
+                                   MultipartUpload upload, int partNumber, long offset, long length,
+                                   boolean verify)
+            throws IOException, InterruptedException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                Blob blob = from.getBlob(containerFrom, name, new GetOptions().range(offset, offset + length - 1));
+                if (blob == null) {
+                    throw new IOException(name + " was removed during the copy");
+                }
+                byte[] data;
+                try (InputStream in = blob.getPayload().openStream()) {
+                    data = ByteStreams.toByteArray(in);
+                }
+                if (data.length != length) {
+                    throw new IOException("read " + data.length + " bytes of part " + partNumber + " of " + name +
+                            ", expected " + length);
+                }
+                Payload payload = new ByteSourcePayload(ByteSource.wrap(data));
+                payload.getContentMetadata().setContentLength(length);
+                MultipartPart part = to.uploadMultipartPart(upload, partNumber, payload);
+                if (verify) {
+                    ContentDigest.verify(name + " part " + partNumber, "uploaded",
+                            Hashing.md5().hashBytes(data), ContentDigest.md5FromETag(part.partETag()));
+                }
+                return part;
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= maxAttempts || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                logger.debug("retrying part {} of {}: {}", partNumber, name, e.toString());
+                Thread.sleep(RETRY_DELAY_MS * attempt);
+            }
+        }
+    }
+}
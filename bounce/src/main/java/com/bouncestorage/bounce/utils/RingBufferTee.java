@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a stream once and hands its content to several consumers, each
+ * reading at its own pace. The content is kept in a ring buffer, so the
+ * fastest consumer may run ahead of the slowest one by up to the buffer
+ * capacity before it waits. There is no copying thread: the consumer that
+ * reaches the end of the buffered content reads the next chunk from the
+ * stream. A consumer that closes its stream no longer holds back the others.
+ *
+ * <p>Buffers are pooled, and the time every consumer waited for the others
+ * and for the stream is recorded to tell which side is the bottleneck.
+ */
+public final class RingBufferTee {
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final String name;
+    private final InputStream upstream;
+    private final int capacity;
+    private final long[] positions;
+    private final boolean[] closed;
+    private final long[] consumerWaitNanos;
+    private final long[] upstreamWaitNanos;
+    private final InputStream[] streams;
+    private byte[] buffer;
+    // number of bytes read from the upstream
+    private long filled;
+    private boolean filling;
+    private boolean eof;
+    private IOException failure;
+    private int open;
+
+    public RingBufferTee(String name, InputStream upstream, int capacity, int consumers) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        checkArgument(consumers > 0, "there must be at least one consumer");
+        this.name = requireNonNull(name);
+        this.upstream = requireNonNull(upstream);
+        this.capacity = capacity;
+        positions = new long[consumers];
+        closed = new boolean[consumers];
+        consumerWaitNanos = new long[consumers];
+        upstreamWaitNanos = new long[consumers];
+        streams = new InputStream[consumers];
+        for (int i = 0; i < consumers; i++) {
+            streams[i] = new ConsumerStream(i);
+        }
+        open = consumers;
+        buffer = acquireBuffer(capacity);
+    }
+
+    public InputStream getStream(int consumer) {
+        checkElementIndex(consumer, streams.length);
+        return streams[consumer];
+    }
+
+    /** Return how long the consumer waited for slower consumers, in milliseconds. */
+    public synchronized long getConsumerWaitMillis(int consumer) {
+        return TimeUnit.NANOSECONDS.toMillis(consumerWaitNanos[consumer]);
+    }
+
+    /** Return how long the consumer waited for the upstream, in milliseconds. */
+    public synchronized long getUpstreamWaitMillis(int consumer) {
+        return TimeUnit.NANOSECONDS.toMillis(upstreamWaitNanos[consumer]);
+    }
+
+    private int read(int consumer, byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int fillOffset;
+            int fillLength;
+            synchronized (this) {
+                while (true) {
+                    if (closed[consumer]) {
+                        throw new IOException("stream closed");
+                    }
+                    long available = filled - positions[consumer];
+                    if (available > 0) {
+                        return copy(consumer, b, off, (int) Math.min(len, available));
+                    } else if (failure != null) {
+                        throw new IOException("failed to read " + name, failure);
+                    } else if (eof) {
+                        return -1;
+                    }
+                    if (!filling) {
+                        long free = capacity - (filled - minPosition());
+                        if (free > 0) {
+                            fillOffset = (int) (filled % capacity);
+                            fillLength = (int) Math.min(free, capacity - fillOffset);
+                            filling = true;
+                            break;
+                        }
+                    }
+                    // another consumer is either reading the upstream, or too far behind
+                    long[] waitNanos = filling ? upstreamWaitNanos : consumerWaitNanos;
+                    long start = System.nanoTime();
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    } finally {
+                        waitNanos[consumer] += System.nanoTime() - start;
+                    }
+                }
+            }
+            fill(consumer, fillOffset, fillLength);
+        }
+    }
+
+    /** Read the next chunk of the upstream, past the content of every consumer. */
+    private void fill(int consumer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        int n = -1;
+        IOException error = null;
+        try {
+            n = upstream.read(buffer, offset, length);
+        } catch (IOException e) {
+            error = e;
+        }
+        boolean done;
+        synchronized (this) {
+            upstreamWaitNanos[consumer] += System.nanoTime() - start;
+            filling = false;
+            if (error != null) {
+                failure = error;
+            } else if (n < 0) {
+                eof = true;
+            } else {
+                filled += n;
+            }
+            notifyAll();
+            // every consumer may have been closed meanwhile
+            done = release();
+        }
+        if (done) {
+            upstream.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private int copy(int consumer, byte[] b, int off, int len) {
+        int start = (int) (positions[consumer] % capacity);
+        int first = Math.min(len, capacity - start);
+        System.arraycopy(buffer, start, b, off, first);
+        if (first < len) {
+            System.arraycopy(buffer, 0, b, off + first, len - first);
+        }
+        positions[consumer] += len;
+        // the slowest consumer may have freed space in the buffer
+        notifyAll();
+        return len;
+    }
+
+    private long minPosition() {
+        long min = filled;
+        for (int i = 0; i < positions.length; i++) {
+            if (!closed[i]) {
+                min = Math.min(min, positions[i]);
+            }
+        }
+        return min;
+    }
+
+    private void close(int consumer) throws IOException {
+        synchronized (this) {
+            if (closed[consumer]) {
+                return;
+            }
+            closed[consumer] = true;
+            open--;
+            notifyAll();
+            if (!release()) {
+                return;
+            }
+        }
+        upstream.close();
+    }
+
+    /**
+     * Return the buffer to the pool once every consumer is closed, unless the
+     * upstream is being read into it.
+     */
+    private boolean release() {
+        if (open > 0 || filling || buffer == null) {
+            return false;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("tee of {} done, waits for consumers {} ms, for the upstream {} ms", name,
+                    Arrays.toString(Arrays.stream(consumerWaitNanos).map(TimeUnit.NANOSECONDS::toMillis)
+                            .toArray()),
+                    Arrays.toString(Arrays.stream(upstreamWaitNanos).map(TimeUnit.NANOSECONDS::toMillis)
+                            .toArray()));
+        }
+        releaseBuffer(buffer);
+        buffer = null;
+        return true;
+    }
+
+    private static byte[] acquireBuffer(int capacity) {
+        byte[] pooled = POOL.poll();
+        if (pooled != null) {
+            POOL_SIZE.decrementAndGet();
+            if (pooled.length == capacity) {
+                return pooled;
+            }
+        }
+        return new byte[capacity];
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        if (POOL_SIZE.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            POOL.offer(buffer);
+        } else {
+            POOL_SIZE.decrementAndGet();
+        }
+    }
+
+    private final class ConsumerStream extends InputStream {
+        private final int consumer;
+
+        ConsumerStream(int consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = RingBufferTee.this.read(consumer, b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkElementIndex(off, b.length + 1);
+            checkArgument(len >= 0 && off + len <= b.length, "invalid length");
+            return RingBufferTee.this.read(consumer, b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            RingBufferTee.this.close(consumer);
+        }
+    }
+}
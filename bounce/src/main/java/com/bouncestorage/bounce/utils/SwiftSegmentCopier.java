@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.bouncestorage.bounce.Utils;
+import com.bouncestorage.bounce.admin.BackendThrottle;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies Swift static large objects between Swift stores segment by segment.
+ * Segments are written by jclouds next to their manifest, named
+ * {@code <name>/slo/<timestamp>/<size>/<part size>/<part number>}, and the
+ * copy keeps those names. The segments of the manifest are told apart from
+ * those of other uploads of the same name by the manifest etag, which is the
+ * MD5 of the etags of its segments. Segments the destination already has
+ * with the same etag are not copied again, and the manifest is written after
+ * every segment, so an interrupted copy resumes where it stopped.
+ */
+public final class SwiftSegmentCopier {
+    private static final String SEGMENT_INFIX = "/slo/";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ExecutorService executor;
+    private final int concurrency;
+
+    public SwiftSegmentCopier(ExecutorService executor, int concurrency) {
+        checkArgument(concurrency > 0, "concurrency must be positive");
+        this.executor = requireNonNull(executor);
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Copy the large object in containerFrom with the source metadata to
+     * containerTo. The segments are found by the etag and size of the source
+     * manifest, and the metadata is that of the copy.
+     *
+     * @return whether the object was copied, false if it has no segments
+     */
+    public boolean copy(BlobStore from, String containerFrom, BlobMetadata source, BlobStore to,
+                        String containerTo, BlobMetadata metadata) throws IOException {
+        String name = source.getName();
+        String prefix = name + SEGMENT_INFIX;
+        List<StorageMetadata> segments = findSegments(
+                listPrefix(from, containerFrom, prefix), source.getETag(), source.getSize());
+        if (segments == null) {
+            return false;
+        }
+
+        String uploadId = getUploadId(segments.get(0).getName());
+        Map<String, String> present = new HashMap<>();
+        for (StorageMetadata sm : listPrefix(to, containerTo, uploadId + "/")) {
+            present.put(sm.getName(), normalizeETag(sm.getETag()));
+        }
+        // keep the segment names of the source, so that copying again finds them
+        MultipartUpload upload = withId(to.initiateMultipartUpload(containerTo, metadata), uploadId);
+
+        // the segments are copied on other threads, which have to be throttled like this one
+        boolean background = BackendThrottle.isBackground();
+        List<Future<MultipartPart>> parts = new ArrayList<>(segments.size());
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicBoolean failed = new AtomicBoolean();
+        int skipped = 0;
+        try {
+            for (int i = 0; i < segments.size() && !failed.get(); i++) {
+                StorageMetadata segment = segments.get(i);
+                int partNumber = i + 1;
+                String etag = normalizeETag(segment.getETag());
+                if (etag.equals(present.get(segment.getName()))) {
+                    parts.add(CompletableFuture.completedFuture(
+                            MultipartPart.create(partNumber, segment.getSize(), etag)));
+                    skipped++;
+                    continue;
+                }
+                Callable<MultipartPart> task = () -> {
+                    try {
+                        return copySegment(from, containerFrom, to, upload, segment, partNumber);
+                    } catch (Throwable t) {
+                        failed.set(true);
+                        throw t;
+                    } finally {
+                        permits.release();
+                    }
+                };
+                permits.acquire();
+                try {
+                    parts.add(executor.submit(background ? BackendThrottle.background(task) : task));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+
+            List<MultipartPart> copied = new ArrayList<>(parts.size());
+            for (Future<MultipartPart> part : parts) {
+                copied.add(part.get());
+            }
+            logger.debug("copied {} of {} segments of {}", segments.size() - skipped, segments.size(), name);
+            to.completeMultipartUpload(upload, copied);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("copy of " + name + " cancelled");
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw propagate(e.getCause());
+        } finally {
+            // the segments copied so far are left for the next attempt
+            parts.forEach(part -> part.cancel(true));
+        }
+    }
+
+    private static MultipartPart copySegment(BlobStore from, String containerFrom, BlobStore to,
+                                             MultipartUpload upload, StorageMetadata segment, int partNumber)
+            throws IOException {
+        Blob blob = from.getBlob(containerFrom, segment.getName());
+        if (blob == null) {
+            throw new IOException(segment.getName() + " was removed during the copy");
+        }
+        blob.getPayload().getContentMetadata().setContentLength(segment.getSize());
+        MultipartPart part = to.uploadMultipartPart(upload, partNumber, blob.getPayload());
+        // segments are plain objects, so their etags are the MD5 of their content
+        ContentDigest.verify(segment.getName(), "source", ContentDigest.md5FromETag(part.partETag()),
+                ContentDigest.md5FromETag(segment.getETag()));
+        return part;
+    }
+
+    private static Iterable<StorageMetadata> listPrefix(BlobStore blobStore, String container, String prefix) {
+        List<StorageMetadata> entries = new ArrayList<>();
+        // listings are sorted, so the entries with the prefix follow it
+        for (StorageMetadata sm : Utils.crawlBlobStore(blobStore, container,
+                new ListContainerOptions().afterMarker(prefix))) {
+            if (!sm.getName().startsWith(prefix)) {
+                break;
+            }
+            entries.add(sm);
+        }
+        return entries;
+    }
+
+    /**
+     * Return the segments of the upload whose manifest has the given etag and
+     * size, ordered by part number, or null if no upload matches.
+     */
+    @VisibleForTesting
+    static List<StorageMetadata> findSegments(Iterable<StorageMetadata> listing, String manifestETag,
+                                              Long size) {
+        if (manifestETag == null || size == null) {
+            return null;
+        }
+        // segment names sort by part number within an upload
+        Map<String, List<StorageMetadata>> uploads = new HashMap<>();
+        for (StorageMetadata sm : listing) {
+            uploads.computeIfAbsent(getUploadId(sm.getName()), id -> new ArrayList<>()).add(sm);
+        }
+        String expected = normalizeETag(manifestETag);
+        for (List<StorageMetadata> segments : uploads.values()) {
+            Hasher hasher = Hashing.md5().newHasher();
+            long total = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                StorageMetadata segment = segments.get(i);
+                if (segment.getETag() == null || segment.getSize() == null) {
+                    return null;
+                }
+                // the manifest names the segments after their part numbers
+                if (!segment.getName().endsWith(String.format("/%08d", i + 1))) {
+                    hasher = null;
+                    break;
+                }
+                hasher.putString(normalizeETag(segment.getETag()), StandardCharsets.US_ASCII);
+                total += segment.getSize();
+            }
+            if (hasher != null && total == size && hasher.hash().toString().equals(expected)) {
+                return segments;
+            }
+        }
+        return null;
+    }
+
+    private static String getUploadId(String segmentName) {
+        return segmentName.substring(0, segmentName.lastIndexOf('/'));
+    }
+
+    private static String normalizeETag(String etag) {
+        if (etag == null) {
+            return null;
+        }
+        String unquoted = etag;
+        if (etag.length() >= 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+            unquoted = etag.substring(1, etag.length() - 1);
+        }
+        return unquoted.toLowerCase();
+    }
+
+    private static MultipartUpload withId(MultipartUpload upload, String id) {
+        return new MultipartUpload() {
+            @Override
+            public String containerName() {
+                return upload.containerName();
+            }
+
+            @Override
+            public String blobName() {
+                return upload.blobName();
+            }
+
+            @Override
+            public String id() {
+                return id;
+            }
+
+            @Override
+            public BlobMetadata blobMetadata() {
+                return upload.blobMetadata();
+            }
+        };
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.Optional;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MutableBlobMetadata;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.internal.MutableBlobMetadataImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class BounceLinkTest {
+    private BlobStore blobStore;
+    private String containerName;
+
+    @Before
+    public void setUp() {
+        blobStore = UtilsTest.createTransientBlobStore();
+        containerName = Utils.createRandomContainerName();
+        blobStore.createContainerInLocation(null, containerName);
+    }
+
+    @Test
+    public void testShortLinkInMetadata() throws Exception {
+        BlobMetadata metadata = makeMetadata(ImmutableMap.of("key", "value"));
+        blobStore.putBlob(containerName, new BounceLink(Optional.of(metadata)).toBlob(blobStore));
+
+        BlobMetadata linkMetadata = blobStore.blobMetadata(containerName, "blob");
+        assertThat(BounceLink.isLink(linkMetadata)).isTrue();
+        assertThat(linkMetadata.getContentMetadata().getContentLength()).isEqualTo(0L);
+        // the link is resolved from a HEAD alone
+        assertLinkTo(BounceLink.fromMetadata(linkMetadata), metadata);
+        assertLinkTo(BounceLink.fromBlob(blobStore.getBlob(containerName, "blob")), metadata);
+    }
+
+    @Test
+    public void testLongLinkInPayload() throws Exception {
+        BlobMetadata metadata = makeMetadata(ImmutableMap.of("key", Strings.repeat("x", 1024)));
+        blobStore.putBlob(containerName, new BounceLink(Optional.of(metadata)).toBlob(blobStore));
+
+        BlobMetadata linkMetadata = blobStore.blobMetadata(containerName, "blob");
+        assertThat(BounceLink.isLink(linkMetadata)).isTrue();
+        assertThat(BounceLink.fromMetadata(linkMetadata)).isNull();
+        assertLinkTo(BounceLink.fromBlob(blobStore.getBlob(containerName, "blob")), metadata);
+    }
+
+    @Test
+    public void testReadSerializedLink() throws Exception {
+        BlobMetadata metadata = makeMetadata(ImmutableMap.of("key", "value"));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(new BounceLink(Optional.of(metadata)));
+        }
+        // a link written before the compact encoding
+        Blob link = blobStore.blobBuilder("blob")
+                .payload(ByteSource.wrap(bos.toByteArray()))
+                .contentLength(bos.size())
+                .userMetadata(ImmutableMap.of("bounce-link", ""))
+                .build();
+        blobStore.putBlob(containerName, link);
+
+        Blob linkBlob = blobStore.getBlob(containerName, "blob");
+        assertThat(BounceLink.fromMetadata(linkBlob.getMetadata())).isNull();
+        assertLinkTo(BounceLink.fromBlob(linkBlob), metadata);
+    }
+
+    @Test
+    public void testMayBeLink() throws Exception {
+        BlobMetadata metadata = makeMetadata(ImmutableMap.of("key", Strings.repeat("x", 1024)));
+        blobStore.putBlob(containerName, new BounceLink(Optional.of(metadata)).toBlob(blobStore));
+        blobStore.putBlob(containerName, UtilsTest.makeBlob(blobStore, "large",
+                ByteSource.wrap(new byte[1024 * 1024])));
+
+        for (StorageMetadata sm : blobStore.list(containerName)) {
+            assertThat(BounceLink.mayBeLink(sm)).isEqualTo(sm.getName().equals("blob"));
+        }
+    }
+
+    private BlobMetadata makeMetadata(ImmutableMap<String, String> userMetadata) {
+        MutableBlobMetadata metadata = new MutableBlobMetadataImpl();
+        metadata.setContainer(containerName);
+        metadata.setName("blob");
+        metadata.setETag("\"d41d8cd98f00b204e9800998ecf8427e\"");
+        metadata.setLastModified(new Date(1000000));
+        metadata.setSize(42L);
+        metadata.setUserMetadata(userMetadata);
+        metadata.getContentMetadata().setContentLength(42L);
+        metadata.getContentMetadata().setContentType("text/plain");
+        return metadata;
+    }
+
+    private void assertLinkTo(BounceLink link, BlobMetadata expected) {
+        BlobMetadata actual = link.getBlobMetadata();
+        assertThat(actual.getName()).isEqualTo(expected.getName());
+        assertThat(actual.getContainer()).isEqualTo(expected.getContainer());
+        assertThat(actual.getETag()).isEqualTo(expected.getETag());
+        assertThat(actual.getLastModified()).isEqualTo(expected.getLastModified());
+        assertThat(actual.getSize()).isEqualTo(expected.getSize());
+        assertThat(actual.getUserMetadata()).isEqualTo(expected.getUserMetadata());
+        assertThat(actual.getContentMetadata().getContentLength()).isEqualTo(42L);
+        assertThat(actual.getContentMetadata().getContentType()).isEqualTo("text/plain");
+    }
+}
@@ -7,8 +7,11 @@ package com.bouncestorage.bounce;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.nio.charset.StandardCharsets;
+
 import com.bouncestorage.bounce.admin.BouncePolicy;
 import com.bouncestorage.bounce.admin.policy.WriteBackPolicy;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteSource;
 
 import org.jclouds.blobstore.BlobStore;
@@ -125,6 +128,67 @@ public final class BounceTest {
         assertThat(policy.sanityCheck(containerName)).isTrue();
     }
 
+    @Test
+    public void testTakeOverKeepsMetadata() throws Exception {
+        String blobName = "blob";
+        Blob blob = farBlobStore.blobBuilder(blobName)
+                .payload(ByteSource.wrap("bounce".getBytes(StandardCharsets.UTF_8)))
+                .contentType("text/plain")
+                .contentDisposition("attachment; filename=bounce.txt")
+                .contentEncoding("identity")
+                .userMetadata(ImmutableMap.of("key", "value"))
+                .build();
+        farBlobStore.putBlob(containerName, blob);
+        assertThat(policy.sanityCheck(containerName)).isFalse();
+
+        policy.takeOver(containerName);
+        policy.waitForTakeOver();
+        // links serve the metadata of their object without reading it again
+        BlobMetadata meta = policy.blobMetadata(containerName, blobName);
+        ContentMetadata contentMetadata = meta.getContentMetadata();
+        assertThat(contentMetadata.getContentType()).isEqualTo("text/plain");
+        assertThat(contentMetadata.getContentDisposition()).isEqualTo("attachment; filename=bounce.txt");
+        assertThat(contentMetadata.getContentEncoding()).isEqualTo("identity");
+        assertThat(meta.getUserMetadata()).containsEntry("key", "value");
+    }
+
+    @Test
+    public void testResumeTakeOver() throws Exception {
+        for (String blobName : new String[] {"a", "b", "c"}) {
+            farBlobStore.putBlob(containerName, UtilsTest.makeBlob(farBlobStore, blobName));
+        }
+        assertThat(policy.sanityCheck(containerName)).isFalse();
+        // a previous takeover got as far as "a"
+        nearBlobStore.putBlob(containerName, nearBlobStore.blobBuilder(WriteBackPolicy.TAKEOVER_MARKER)
+                .payload(ByteSource.wrap("a".getBytes(StandardCharsets.UTF_8)))
+                .build());
+
+        policy.takeOver(containerName);
+        policy.waitForTakeOver();
+        assertThat(nearBlobStore.blobExists(containerName, WriteBackPolicy.TAKEOVER_MARKER)).isFalse();
+        assertThat(nearBlobStore.blobExists(containerName, "a")).isFalse();
+        assertThat(BounceLink.isLink(nearBlobStore.blobMetadata(containerName, "b"))).isTrue();
+        assertThat(BounceLink.isLink(nearBlobStore.blobMetadata(containerName, "c"))).isTrue();
+    }
+
+    @Test
+    public void testSanityCheckBeyondSample() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            Blob blob = UtilsTest.makeBlob(farBlobStore, "blob" + i);
+            farBlobStore.putBlob(containerName, blob);
+            if (i != 50) {
+                nearBlobStore.putBlob(containerName, blob);
+            }
+        }
+        // the missing object is either in the sample, or found in the background
+        if (!policy.sanityCheck(containerName)) {
+            policy.takeOver(containerName);
+        }
+        Utils.waitUntil(() -> nearBlobStore.blobExists(containerName, "blob50") &&
+                !nearBlobStore.blobExists(containerName, WriteBackPolicy.TAKEOVER_MARKER));
+        assertThat(BounceLink.isLink(nearBlobStore.blobMetadata(containerName, "blob50"))).isTrue();
+    }
+
     @Test
     public void testUnbounce() throws Exception {
         String blobName = "blob";
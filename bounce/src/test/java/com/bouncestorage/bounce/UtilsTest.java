@@ -21,16 +21,20 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.LongSupplier;
 
 import javax.ws.rs.core.HttpHeaders;
 
+import com.bouncestorage.bounce.admin.BackendThrottle;
 import com.bouncestorage.bounce.admin.BounceApplication;
 import com.bouncestorage.bounce.admin.BounceConfiguration;
 import com.bouncestorage.bounce.admin.BouncePolicy;
 import com.bouncestorage.bounce.admin.BounceService;
 import com.bouncestorage.bounce.admin.Location;
+import com.bouncestorage.bounce.admin.LoggingBlobStore;
 import com.bouncestorage.bounce.admin.VirtualContainer;
 import com.bouncestorage.bounce.admin.VirtualContainerResource;
 import com.bouncestorage.bounce.admin.policy.WriteBackPolicy;
@@ -53,6 +57,7 @@ import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.options.ListContainerOptions;
 import org.jclouds.io.ContentMetadata;
@@ -274,6 +279,57 @@ public final class UtilsTest {
                 .isFalse();
     }
 
+    @Test
+    public void testVerifyCopiesSetting() throws Exception {
+        BounceApplication app;
+        synchronized (BounceApplication.class) {
+            app = new BounceApplication();
+        }
+        BlobStore store = new LoggingBlobStore(nearBlobStore, "0", app);
+        assertThat(Utils.verifiesCopies(store)).isTrue();
+        assertThat(Utils.hasContentETags(store)).isTrue();
+
+        app.getConfiguration().setProperty(
+                "bounce.backend.0." + LoggingBlobStore.VERIFY_COPIES, false);
+        assertThat(Utils.verifiesCopies(store)).isFalse();
+        assertThat(Utils.hasContentETags(store)).isFalse();
+    }
+
+    @Test
+    public void testCopyBlobInBackend() throws Exception {
+        String farContainerName = Utils.createRandomContainerName();
+        nearBlobStore.createContainerInLocation(null, farContainerName);
+        try {
+            BlobStore near = new BlobStoreTarget(nearBlobStore, containerName);
+            BlobStore far = new BlobStoreTarget(nearBlobStore, farContainerName);
+            ByteSource byteSource = ByteSource.wrap(new byte[1024]);
+            Blob blob = makeBlob(nearBlobStore, "blob", byteSource);
+            blob.getMetadata().setUserMetadata(ImmutableMap.of("key1", "value1"));
+            near.putBlob(containerName, blob);
+            BlobMetadata metadata = near.blobMetadata(containerName, "blob");
+
+            assertThat(Utils.copyBlob(near, far, containerName, containerName, "blob", true)).isNotNull();
+
+            Blob copy = far.getBlob(containerName, "blob");
+            assertThat(copy.getMetadata().getContentMetadata().getContentType())
+                    .isEqualTo(MediaType.OCTET_STREAM.toString());
+            Map<String, String> userMetadata = copy.getMetadata().getUserMetadata();
+            assertThat(userMetadata).containsEntry("key1", "value1");
+            for (SystemMetadataSerializer serializer : SystemMetadataSerializer.SYSTEM_METADATA) {
+                String value = serializer.serialize(metadata);
+                if (value != null) {
+                    assertThat(userMetadata).containsEntry(serializer.getName(), value);
+                }
+            }
+            try (InputStream is = byteSource.openStream();
+                 InputStream is2 = copy.getPayload().openStream()) {
+                assertThat(is2).hasContentEqualTo(is);
+            }
+        } finally {
+            nearBlobStore.deleteContainer(farContainerName);
+        }
+    }
+
     @Test
     public void testCrawlWithPagination() throws Exception {
         for (int i = 0; i < 5; ++i) {
@@ -292,6 +348,53 @@ public final class UtilsTest {
                 new ListContainerOptions().maxResults(2))).hasSize(5);
     }
 
+    @Test
+    public void testCrawlWithPrefetch() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            nearBlobStore.putBlob(containerName, makeBlob(nearBlobStore, "blob" + i));
+        }
+
+        assertThat(Utils.crawlBlobStore(nearBlobStore, containerName,
+                new ListContainerOptions().maxResults(2), null, 2)).hasSize(5);
+    }
+
+    @Test
+    public void testCrawlWithPrefetchInBackground() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            nearBlobStore.putBlob(containerName, makeBlob(nearBlobStore, "blob" + i));
+        }
+        Queue<Boolean> background = new ConcurrentLinkedQueue<>();
+        BlobStore recording = new ForwardingBlobStore(nearBlobStore) {
+            @Override
+            public PageSet<? extends StorageMetadata> list(String container, ListContainerOptions options) {
+                background.add(BackendThrottle.isBackground());
+                return super.list(container, options);
+            }
+        };
+
+        List<StorageMetadata> listed = BackendThrottle.background(() -> ImmutableList.copyOf(
+                Utils.crawlBlobStore(recording, containerName, new ListContainerOptions().maxResults(2), null, 2)))
+                .call();
+        assertThat(listed).hasSize(5);
+        // the prefetched pages are throttled like the crawl they belong to
+        assertThat(background).isNotEmpty().doesNotContain(false);
+    }
+
+    @Test
+    public void testCrawlWithEndMarker() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            nearBlobStore.putBlob(containerName, makeBlob(nearBlobStore, "blob" + i));
+        }
+
+        ListContainerOptions options = new ListContainerOptions().maxResults(2).afterMarker("blob0");
+        assertThat(Utils.crawlBlobStore(nearBlobStore, containerName, options, "blob3"))
+                .extracting("name")
+                .containsExactly("blob1", "blob2", "blob3");
+        assertThat(Utils.crawlBlobStore(nearBlobStore, containerName, options, "blob3", 1))
+                .extracting("name")
+                .containsExactly("blob1", "blob2", "blob3");
+    }
+
     @Test
     public void testBounceDirectories() throws Exception {
         String blobName = "foo/bar/baz";
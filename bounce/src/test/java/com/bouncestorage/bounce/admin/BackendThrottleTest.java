@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+import org.jclouds.io.Payload;
+import org.jclouds.io.payloads.ByteSourcePayload;
+import org.junit.Test;
+
+public final class BackendThrottleTest {
+    @Test
+    public void testUnlimitedPayloadIsNotWrapped() {
+        BackendThrottle throttle = new BackendThrottle(0, 0);
+        Payload payload = new ByteSourcePayload(ByteSource.wrap(new byte[10]));
+        assertThat(throttle.wrap(payload)).isSameAs(payload);
+    }
+
+    @Test
+    public void testThrottledPayloadContent() throws Exception {
+        BackendThrottle throttle = new BackendThrottle(1024 * 1024, 0);
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Payload payload = throttle.wrap(new ByteSourcePayload(ByteSource.wrap(content)));
+        assertThat(payload.getRawContent()).isInstanceOf(ByteSource.class);
+        try (InputStream is = payload.openStream()) {
+            assertThat(ByteStreams.toByteArray(is)).isEqualTo(content);
+        }
+        try (InputStream is = ((ByteSource) payload.getRawContent()).slice(10, 5).openStream()) {
+            assertThat(ByteStreams.toByteArray(is)).isEqualTo(new byte[] {10, 11, 12, 13, 14});
+        }
+    }
+
+    @Test
+    public void testBackgroundScope() throws Exception {
+        assertThat(BackendThrottle.isBackground()).isFalse();
+        assertThat(BackendThrottle.background(BackendThrottle::isBackground).call()).isTrue();
+        BackendThrottle.runInBackground(() -> assertThat(BackendThrottle.isBackground()).isTrue());
+        assertThat(BackendThrottle.isBackground()).isFalse();
+    }
+}
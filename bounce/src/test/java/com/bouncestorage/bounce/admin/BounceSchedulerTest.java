@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+public final class BounceSchedulerTest {
+    @Test
+    public void testNightlyWindow() {
+        BounceScheduler.Window window = BounceScheduler.Window.parse("30 22 * * *", Duration.ofHours(8),
+                ZoneOffset.UTC);
+        Instant start = Instant.parse("2015-06-01T22:30:00Z");
+        assertThat(window.lastStart(Instant.parse("2015-06-01T22:29:59Z"))).isNull();
+        assertThat(window.lastStart(start)).isEqualTo(start);
+        assertThat(window.lastStart(Instant.parse("2015-06-02T04:00:00Z"))).isEqualTo(start);
+        assertThat(window.lastStart(Instant.parse("2015-06-02T06:30:00Z"))).isNull();
+        assertThat(window.contains(start, Instant.parse("2015-06-02T06:29:59Z"))).isTrue();
+        assertThat(window.contains(start, Instant.parse("2015-06-02T06:30:00Z"))).isFalse();
+    }
+
+    @Test
+    public void testWeekdaysAndSteps() {
+        // every 15 minutes from 1:00 to 2:59, monday to friday
+        BounceScheduler.Window window = BounceScheduler.Window.parse("*/15 1-2 * * 1-5", Duration.ofMinutes(5),
+                ZoneOffset.UTC);
+        // 2015-06-01 is a monday
+        assertThat(window.lastStart(Instant.parse("2015-06-01T02:47:00Z")))
+                .isEqualTo(Instant.parse("2015-06-01T02:45:00Z"));
+        assertThat(window.lastStart(Instant.parse("2015-06-01T02:51:00Z"))).isNull();
+        assertThat(window.lastStart(Instant.parse("2015-06-06T01:00:00Z"))).isNull();
+    }
+
+    @Test
+    public void testInvalidExpression() {
+        assertThatThrownBy(() -> BounceScheduler.Window.parse("0 21 * *", Duration.ofHours(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BounceScheduler.Window.parse("0 24 * * *", Duration.ofHours(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -12,8 +12,14 @@ import static org.assertj.core.api.Assertions.assertThat;
 import java.io.InputStream;
 import java.time.Clock;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.bouncestorage.bounce.BounceLink;
 import com.bouncestorage.bounce.Utils;
@@ -22,16 +28,22 @@ import com.bouncestorage.bounce.admin.BounceService.BounceTaskStatus;
 import com.bouncestorage.bounce.admin.policy.NoBouncePolicy;
 import com.bouncestorage.bounce.admin.policy.WriteBackPolicy;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
 
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobMetadata;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public final class BounceServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private Logger logger;
     private BouncePolicy policy;
     private String containerName;
@@ -110,6 +122,29 @@ public final class BounceServiceTest {
         UtilsTest.assertEqualBlobs(blob, policy.getBlob(containerName, blobName));
     }
 
+    @Test
+    public void testBounceMetrics() throws Exception {
+        toggleMoveEverything();
+
+        long size = 100;
+        Blob blob = UtilsTest.makeBlob(policy, UtilsTest.createRandomBlobName(),
+                ByteSource.wrap(new byte[(int) size]));
+        policy.putBlob(containerName, blob);
+        BounceTaskStatus status = bounceService.bounce(containerName);
+        status.future().get();
+        assertStatus(status, status::getMovedByteCount).isEqualTo(size);
+        assertStatus(status, status::getCopiedByteCount).isEqualTo(0);
+        assertThat(status.getLatencies().get(BouncePolicy.BounceResult.MOVE).getCount()).isEqualTo(1);
+        assertThat(status.getExpectedObjectCount()).isEqualTo(0);
+        assertThat(status.getEstimatedSecondsRemaining()).isEqualTo(0);
+
+        // the next bounce expects as many objects as the previous one
+        status = bounceService.bounce(containerName);
+        status.future().get();
+        assertThat(status.getExpectedObjectCount()).isEqualTo(1);
+        assertThat(status.getLatencies().get(BouncePolicy.BounceResult.NO_OP).getCount()).isEqualTo(1);
+    }
+
     @Test
     public void testBounceLastModifiedTimePolicy() throws Exception {
         lastModifiedTimePolicy(Duration.ofHours(1));
@@ -231,6 +266,71 @@ public final class BounceServiceTest {
         UtilsTest.assertEqualBlobs(blob, policy.getBlob(containerName, blobName));
     }
 
+    @Test
+    public void testScheduledBounceOutlivesWindowWithoutCheckpoints() throws Exception {
+        toggleMoveEverything();
+
+        String blobName = UtilsTest.createRandomBlobName();
+        policy.putBlob(containerName, UtilsTest.makeBlob(policy, blobName));
+
+        Instant windowStart = ZonedDateTime.now(ZoneId.systemDefault())
+                .withHour(BounceApplication.BOUNCE_SCHEDULE_TIME)
+                .truncatedTo(ChronoUnit.HOURS)
+                .toInstant();
+        app.setClock(Clock.fixed(windowStart, ZoneId.systemDefault()));
+
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // hold the bounce back until its window has closed
+            executor.submit(() -> {
+                latch.await();
+                return null;
+            });
+            BounceScheduler scheduler = new BounceScheduler(app, bounceService, executor);
+            scheduler.tick();
+            BounceTaskStatus status = bounceService.status(containerName);
+            assertThat(status).isNotNull();
+
+            app.setClock(Clock.fixed(windowStart.plus(Duration.ofHours(2)), ZoneId.systemDefault()));
+            scheduler.tick();
+            latch.countDown();
+            status.future().get();
+            assertThat(status.aborted).isFalse();
+            assertStatus(status, status::getMovedObjectCount).isEqualTo(1);
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void testIncrementalBounceBudget() throws Exception {
+        app.getConfiguration().setProperty(BounceApplication.CHANGE_JOURNAL_DIR, folder.getRoot().getPath());
+        // reconcile one key at a time, so that the budget stops the bounce after the first
+        app.getConfiguration().setProperty(BounceService.RECONCILE_THREADS, 1);
+        app.getConfiguration().setProperty(BounceService.RECONCILE_QUEUE_SIZE, 0);
+        bounceService = app.bounceService = new BounceService(app);
+        toggleMoveEverything();
+        for (int i = 0; i < 3; i++) {
+            policy.putBlob(containerName, UtilsTest.makeBlob(policy, UtilsTest.createRandomBlobName(),
+                    ByteSource.wrap(new byte[100])));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BounceTaskStatus status = bounceService.bounce(containerName, executor, true, 1);
+            status.future().get();
+            assertThat(status.isIncremental()).isTrue();
+            assertThat(status.isBudgetExhausted()).isTrue();
+            assertThat(status.getBouncedByteCount()).isEqualTo(100);
+            assertStatus(status, status::getMovedObjectCount).isEqualTo(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 
     private void checkCopiedBlob(String blobName) throws Exception {
         Blob nearBlob = policy.getSource().getBlob(containerName, blobName);
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import com.bouncestorage.bounce.admin.KeyspaceSharder.KeyRange;
+
+import org.junit.Test;
+
+public final class KeyspaceSharderTest {
+    @Test
+    public void testUnknownKeyspaceIsOneShard() {
+        KeyspaceSharder sharder = new KeyspaceSharder(4, 1);
+        List<KeyRange> shards = sharder.getShards("container");
+        assertThat(shards).containsExactly(KeyRange.create(null, null));
+    }
+
+    @Test
+    public void testLearnBoundaries() {
+        KeyspaceSharder sharder = new KeyspaceSharder(4, 10);
+        KeyspaceSharder.Sampler sampler = sharder.newSampler("container");
+        for (int i = 0; i < 1000; i++) {
+            sampler.offer(String.format("%04d", i));
+        }
+        sampler.finish();
+
+        List<KeyRange> shards = sharder.getShards("container");
+        assertThat(shards).hasSize(4);
+        assertThat(shards.get(0).getStartMarker()).isNull();
+        assertThat(shards.get(3).getEndMarker()).isNull();
+        for (int i = 1; i < shards.size(); i++) {
+            assertThat(shards.get(i).getStartMarker()).isEqualTo(shards.get(i - 1).getEndMarker());
+        }
+
+        // every key belongs to exactly one shard
+        for (int i = 0; i < 1000; i++) {
+            String key = String.format("%04d", i);
+            assertThat(shards.stream().filter(r -> r.contains(key)).count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testFewerSamplesThanShards() {
+        KeyspaceSharder sharder = new KeyspaceSharder(8, 1);
+        KeyspaceSharder.Sampler sampler = sharder.newSampler("container");
+        sampler.offer("a");
+        sampler.offer("b");
+        sampler.finish();
+        assertThat(sharder.getShards("container")).containsExactly(
+                KeyRange.create(null, "a"),
+                KeyRange.create("a", "b"),
+                KeyRange.create("b", null));
+    }
+
+    @Test
+    public void testRangeContains() {
+        KeyRange range = KeyRange.create("b", "d");
+        assertThat(range.contains("b")).isFalse();
+        assertThat(range.contains("c")).isTrue();
+        assertThat(range.contains("d")).isTrue();
+        assertThat(range.contains("e")).isFalse();
+    }
+}
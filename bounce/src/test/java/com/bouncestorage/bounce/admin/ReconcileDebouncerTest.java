@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bouncestorage.bounce.Utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class ReconcileDebouncerTest {
+    private ScheduledThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ScheduledThreadPoolExecutor(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testRepeatedWritesCoalesce() throws Exception {
+        ReconcileDebouncer debouncer = new ReconcileDebouncer(executor, 100);
+        AtomicInteger reconciles = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(debouncer.schedule("container", "key", Duration.ofMillis(200),
+                    reconciles::incrementAndGet)).isTrue();
+        }
+        assertThat(debouncer.getPendingCount()).isEqualTo(1);
+        Utils.waitUntil(() -> reconciles.get() > 0);
+        assertThat(debouncer.getPendingCount()).isEqualTo(0);
+        Thread.sleep(300);
+        assertThat(reconciles.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDeadlineIsExtended() throws Exception {
+        ReconcileDebouncer debouncer = new ReconcileDebouncer(executor, 100);
+        AtomicInteger reconciles = new AtomicInteger();
+        debouncer.schedule("container", "key", Duration.ofMillis(300), reconciles::incrementAndGet);
+        Thread.sleep(200);
+        debouncer.schedule("container", "key", Duration.ofMillis(300), reconciles::incrementAndGet);
+        Thread.sleep(200);
+        // the first deadline passed, but the key was written again since
+        assertThat(reconciles.get()).isEqualTo(0);
+        Utils.waitUntil(() -> reconciles.get() > 0);
+        assertThat(reconciles.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testBoundedPendingKeys() throws Exception {
+        ReconcileDebouncer debouncer = new ReconcileDebouncer(executor, 2);
+        Runnable noop = () -> { };
+        assertThat(debouncer.schedule("container", "a", Duration.ofHours(1), noop)).isTrue();
+        assertThat(debouncer.schedule("container", "b", Duration.ofHours(1), noop)).isTrue();
+        assertThat(debouncer.schedule("container", "a", Duration.ofHours(1), noop)).isTrue();
+        assertThat(debouncer.schedule("container", "c", Duration.ofHours(1), noop)).isFalse();
+        assertThat(executor.getQueue()).hasSize(2);
+    }
+}
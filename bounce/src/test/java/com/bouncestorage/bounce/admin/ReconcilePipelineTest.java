@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public final class ReconcilePipelineTest {
+    private final ReconcilePipeline pipeline = new ReconcilePipeline(4, 0, 2);
+
+    @After
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void testAwaitAllTasks() {
+        AtomicInteger count = new AtomicInteger();
+        ReconcilePipeline.Batch batch = pipeline.newBatch("container");
+        for (int i = 0; i < 100; i++) {
+            batch.submit(count::incrementAndGet);
+        }
+        batch.await();
+        assertThat(count.get()).isEqualTo(100);
+    }
+
+    @Test
+    public void testContainerLimitBlocksCrawler() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ReconcilePipeline.Batch batch = pipeline.newBatch("container");
+        batch.submit(() -> awaitQuietly(release));
+        batch.submit(() -> awaitQuietly(release));
+
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread crawler = new Thread(() -> {
+            batch.submit(() -> { });
+            submitted.countDown();
+        });
+        crawler.start();
+        assertThat(submitted.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+        // other containers still make progress
+        ReconcilePipeline.Batch other = pipeline.newBatch("other");
+        other.submit(() -> { });
+        other.await();
+
+        release.countDown();
+        assertThat(submitted.await(10, TimeUnit.SECONDS)).isTrue();
+        batch.await();
+        crawler.join();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.stream.IntStream;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+public final class TierStatsTest {
+    @Test
+    public void testSizeHistogram() {
+        TierStats stats = new TierStats();
+        stats.add(0);
+        stats.add(1);
+        stats.add(1000);
+        stats.add(1023);
+        stats.add(1024);
+        assertThat(stats.getObjectCount()).isEqualTo(5);
+        assertThat(stats.getTotalSize()).isEqualTo(3048);
+        assertThat(stats.getSizeHistogram()).isEqualTo(ImmutableMap.of(0L, 1L, 1L, 1L, 512L, 2L, 1024L, 1L));
+    }
+
+    @Test
+    public void testConcurrentUpdates() {
+        TierStats stats = new TierStats();
+        IntStream.range(0, 100000).parallel().forEach(i -> stats.add(2));
+        assertThat(stats.getObjectCount()).isEqualTo(100000);
+        assertThat(stats.getTotalSize()).isEqualTo(200000);
+        assertThat(stats.getSizeHistogram()).isEqualTo(ImmutableMap.of(2L, 100000L));
+    }
+}
@@ -78,7 +78,8 @@ public class StoragePolicyTest {
     @Test
     public void testEvictedDaysCalculation() {
         TreeMap<Instant, Long> sizeHistogram = new TreeMap<>();
-        policy.currentSize = 12000L;
+        StoragePolicy.Eviction eviction = policy.newEviction();
+        eviction.currentSize = 12000L;
 
         Instant expired = Instant.now().truncatedTo(ChronoUnit.DAYS);
         sizeHistogram.put(expired, 4000L);
@@ -86,7 +87,7 @@ public class StoragePolicyTest {
         Instant later = Instant.now().truncatedTo(ChronoUnit.DAYS).plus(1, ChronoUnit.DAYS);
         sizeHistogram.put(later, 8000L);
 
-        Instant evictionTime = policy.getEvictionTime(sizeHistogram);
+        Instant evictionTime = policy.getEvictionTime(eviction, sizeHistogram);
         assertThat(evictionTime).isEqualTo(expired);
         assertThat(evictionTime.isBefore(expired.plus(1, ChronoUnit.SECONDS))).isTrue();
     }
@@ -94,7 +95,8 @@ public class StoragePolicyTest {
     @Test
     public void testEvictedDaysEdgeCase() {
         TreeMap<Instant, Long> sizeHistogram = new TreeMap<>();
-        policy.currentSize = 18000L;
+        StoragePolicy.Eviction eviction = policy.newEviction();
+        eviction.currentSize = 18000L;
 
         Instant expiredDay = Instant.now();
         sizeHistogram.put(expiredDay, 4000L);
@@ -102,7 +104,7 @@ public class StoragePolicyTest {
 
         sizeHistogram.put(Instant.now().plus(2, ChronoUnit.DAYS), 9000L);
 
-        Instant evictionTime = policy.getEvictionTime(sizeHistogram);
+        Instant evictionTime = policy.getEvictionTime(eviction, sizeHistogram);
         assertThat(evictionTime.isAfter(expiredDay.plus(1, ChronoUnit.DAYS)));
         assertThat(evictionTime.isBefore(expiredDay.plus(1, ChronoUnit.DAYS).plus(1, ChronoUnit.SECONDS))).isTrue();
     }
@@ -177,4 +179,25 @@ public class StoragePolicyTest {
         assertStatus(status, status::getErrorObjectCount).isEqualTo(0);
         assertStatus(status, status::getMovedObjectCount).isEqualTo(0);
     }
+
+    @Test
+    public void testPlanKeepsEvictionState() throws Exception {
+        String content = StringUtils.repeat("foo", 2000);
+        for (String blobName : ImmutableSet.of("blob1", "blob2")) {
+            policy.putBlob(containerName, UtilsTest.makeBlob(policy, blobName, ByteSource.wrap(content.getBytes())));
+        }
+        policy.prepareBounce(containerName);
+        StoragePolicy.Eviction eviction = policy.getEviction();
+        long currentSize = eviction.currentSize;
+        Instant evictionTime = eviction.evictionTime;
+
+        BounceService.BounceTaskStatus status = bounceService.plan(containerName);
+        status.future().get();
+        assertThat(status.getPlannedResult(BouncePolicy.BounceResult.MOVE).getObjectCount()).isGreaterThan(0);
+        assertThat(policy.getEviction()).isSameAs(eviction);
+        assertThat(eviction.currentSize).isEqualTo(currentSize);
+        assertThat(eviction.evictionTime).isEqualTo(evictionTime);
+        assertThat(BounceLink.isLink(policy.getSource().blobMetadata(containerName, "blob1"))).isFalse();
+        assertThat(BounceLink.isLink(policy.getSource().blobMetadata(containerName, "blob2"))).isFalse();
+    }
 }
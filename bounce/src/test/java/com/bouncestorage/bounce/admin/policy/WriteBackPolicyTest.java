@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
@@ -27,6 +28,7 @@ import javax.ws.rs.HttpMethod;
 
 import com.bouncestorage.bounce.BlobStoreTarget;
 import com.bouncestorage.bounce.BounceLink;
+import com.bouncestorage.bounce.BounceStorageMetadata;
 import com.bouncestorage.bounce.Utils;
 import com.bouncestorage.bounce.UtilsTest;
 import com.bouncestorage.bounce.admin.BounceApplication;
@@ -34,6 +36,7 @@ import com.bouncestorage.bounce.admin.BouncePolicy;
 import com.bouncestorage.bounce.admin.BounceService;
 import com.bouncestorage.bounce.admin.BounceStats;
 import com.bouncestorage.bounce.admin.StatsQueueEntry;
+import com.bouncestorage.bounce.utils.DirtyKeyLog;
 import com.bouncestorage.bounce.utils.ZeroInputStream;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -46,11 +49,14 @@ import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobMetadata;
 import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.GetOptions;
 import org.jclouds.blobstore.options.PutOptions;
 import org.jclouds.io.payloads.ByteSourcePayload;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +67,8 @@ public class WriteBackPolicyTest {
     BounceService bounceService;
     Duration duration = Duration.ofHours(1);
     Logger logger;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     @Before
     public void setUp() throws Exception {
@@ -122,6 +130,107 @@ public class WriteBackPolicyTest {
         UtilsTest.assertEqualBlobs(linkedBlob, blob);
     }
 
+    @Test
+    public void testRangedReadOfLink() throws Exception {
+        String blobName = UtilsTest.createRandomBlobName();
+        byte[] content = new byte[1024];
+        new Random().nextBytes(content);
+        policy.putBlob(containerName, UtilsTest.makeBlob(policy, blobName, ByteSource.wrap(content)));
+        UtilsTest.advanceServiceClock(app, duration.plusHours(1));
+        bounceService.bounce(containerName).future().get();
+        assertThat(BounceLink.isLink(policy.getSource().blobMetadata(containerName, blobName))).isTrue();
+
+        Blob blob = policy.getBlob(containerName, blobName, GetOptions.Builder.range(100, 199));
+        try (InputStream in = blob.getPayload().openStream()) {
+            assertThat(ByteStreams.toByteArray(in)).isEqualTo(Arrays.copyOfRange(content, 100, 200));
+        }
+        // the range was served by the far store without bringing the blob back
+        assertThat(BounceLink.isLink(policy.getSource().blobMetadata(containerName, blobName))).isTrue();
+    }
+
+    @Test
+    public void testListBouncedEmptyObject() throws Exception {
+        String blobName = UtilsTest.createRandomBlobName();
+        policy.putBlob(containerName, UtilsTest.makeBlob(policy, blobName, ByteSource.empty()));
+        UtilsTest.advanceServiceClock(app, duration.plusHours(1));
+        bounceService.bounce(containerName).future().get();
+        assertThat(BounceLink.isLink(policy.getSource().blobMetadata(containerName, blobName))).isTrue();
+
+        // the inline link is as empty as the far object
+        StorageMetadata meta = policy.list(containerName).iterator().next();
+        assertThat(meta.getName()).isEqualTo(blobName);
+        assertThat(((BounceStorageMetadata) meta).getRegions()).doesNotContain(BounceStorageMetadata.Region.NEAR);
+    }
+
+    @Test
+    public void testDirtyKeyLog() throws Exception {
+        app.getConfiguration().setProperty(BounceApplication.DIRTY_LOG_DIR, folder.getRoot().getPath());
+        DirtyKeyLog dirtyKeyLog = app.getDirtyKeyLog();
+        String blobName = UtilsTest.createRandomBlobName();
+        Blob blob = UtilsTest.makeBlob(policy, blobName);
+        policy.putBlob(containerName, blob);
+        assertThat(dirtyKeyLog.isDirty(containerName, blobName)).isTrue();
+        assertThat(policy.getSource().blobExists(containerName, policy.blobGetMarkerName(blobName))).isFalse();
+
+        BounceService.BounceTaskStatus status = runBounce(bounceService, containerName);
+        assertThat(status.getCopiedObjectCount()).isGreaterThan(0);
+        assertThat(dirtyKeyLog.isDirty(containerName, blobName)).isFalse();
+
+        // the far copy is stale once the object is overwritten
+        policy.putBlob(containerName, UtilsTest.makeBlob(policy, blobName, ByteSource.wrap(new byte[1])));
+        StorageMetadata meta = policy.list(containerName).iterator().next();
+        assertThat(((BounceStorageMetadata) meta).getRegions()).isEqualTo(BounceStorageMetadata.NEAR_ONLY);
+    }
+
+    @Test
+    public void testRearmReconciles() throws Exception {
+        String blobName = UtilsTest.createRandomBlobName();
+        // an object written before a restart, whose reconcile never ran
+        policy.getSource().putBlob(containerName, UtilsTest.makeBlob(policy, policy.blobGetMarkerName(blobName)));
+        policy.getSource().putBlob(containerName, UtilsTest.makeBlob(policy, blobName));
+
+        policy.rearmReconciles(containerName);
+        app.resumeBackgroundTasks();
+        Utils.waitUntil(() -> policy.getDestination().blobExists(containerName, blobName));
+        Utils.waitUntil(() -> !policy.getSource().blobExists(containerName, policy.blobGetMarkerName(blobName)));
+    }
+
+    @Test
+    public void testPlanMoveObject() throws Exception {
+        String blobName = UtilsTest.createRandomBlobName();
+        Blob blob = UtilsTest.makeBlob(policy, blobName, ByteSource.wrap("blob".getBytes()));
+        policy.putBlob(containerName, blob);
+
+        UtilsTest.advanceServiceClock(app, duration.plusHours(1));
+        BlobMetadata before = policy.getSource().blobMetadata(containerName, blobName);
+        List<String> listing = describeListing();
+        boolean hasMarkerBlob = policy.getSource().blobExists(containerName, policy.blobGetMarkerName(blobName));
+        BounceService.BounceTaskStatus status = bounceService.plan(containerName);
+        status.future().get();
+        assertThat(status.isPlan()).isTrue();
+        assertThat(status.getPlannedResult(BouncePolicy.BounceResult.MOVE).getObjectCount()).isGreaterThan(0);
+        assertThat(status.getPlannedResult(BouncePolicy.BounceResult.MOVE).getByteCount()).isGreaterThanOrEqualTo(4);
+        assertThat(status.getMovedObjectCount()).isEqualTo(0);
+        assertThat(policy.getDestination().blobExists(containerName, blobName)).isFalse();
+        BlobMetadata source = policy.getSource().blobMetadata(containerName, blobName);
+        assertThat(BounceLink.isLink(source)).isFalse();
+        // neither tier nor the state the policy keeps about them changed
+        assertThat(source.getETag()).isEqualTo(before.getETag());
+        assertThat(source.getUserMetadata()).isEqualTo(before.getUserMetadata());
+        assertThat(describeListing()).isEqualTo(listing);
+        assertThat(policy.getSource().blobExists(containerName, policy.blobGetMarkerName(blobName)))
+                .isEqualTo(hasMarkerBlob);
+    }
+
+    private List<String> describeListing() {
+        List<String> listing = new ArrayList<>();
+        for (StorageMetadata meta : policy.list(containerName)) {
+            listing.add(meta.getName() + " " + meta.getETag() + " " +
+                    ((BounceStorageMetadata) meta).getRegions());
+        }
+        return listing;
+    }
+
     @Test
     public void testCopyObject() throws Exception {
         String blobName = UtilsTest.createRandomBlobName();
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BounceCheckpointsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSaveLoadClear() throws Exception {
+        BounceCheckpoints checkpoints = new BounceCheckpoints(folder.getRoot().toPath());
+        assertThat(checkpoints.load("container/0")).isNull();
+
+        List<BounceCheckpoints.Range> ranges = ImmutableList.of(
+                BounceCheckpoints.Range.create(null, "m", "m", true),
+                BounceCheckpoints.Range.create("m", null, "q", false));
+        checkpoints.save("container/0", ranges);
+        assertThat(new BounceCheckpoints(folder.getRoot().toPath()).load("container/0")).isEqualTo(ranges);
+        assertThat(checkpoints.load("container/1")).isNull();
+
+        checkpoints.clear("container/0");
+        assertThat(checkpoints.load("container/0")).isNull();
+    }
+
+    @Test
+    public void testWatermarkWaitsForEarlierKeys() {
+        BounceCheckpoints.Watermark watermark = new BounceCheckpoints.Watermark("a");
+        watermark.begin("b");
+        watermark.begin("c");
+        watermark.begin("d");
+
+        watermark.complete("c");
+        assertThat(watermark.getMarker()).isEqualTo("a");
+        watermark.complete("b");
+        assertThat(watermark.getMarker()).isEqualTo("c");
+        watermark.complete("d");
+        assertThat(watermark.getMarker()).isEqualTo("d");
+    }
+}
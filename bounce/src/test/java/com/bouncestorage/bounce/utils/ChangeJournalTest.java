@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChangeJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTakeAndCommit() throws Exception {
+        try (ChangeJournal journal = new ChangeJournal(folder.getRoot().toPath())) {
+            journal.append("container", "b");
+            journal.append("container", "a");
+            journal.append("container", "b");
+            journal.append("other", "c");
+
+            ChangeJournal.Batch batch = journal.takeBatch("container");
+            assertThat(batch.getKeys()).containsExactly("a", "b");
+            journal.append("container", "d");
+            batch.commit();
+
+            assertThat(journal.takeBatch("container").getKeys()).containsExactly("d");
+            assertThat(journal.takeBatch("other").getKeys()).containsExactly("c");
+        }
+    }
+
+    @Test
+    public void testUncommittedBatchIsReplayed() throws Exception {
+        try (ChangeJournal journal = new ChangeJournal(folder.getRoot().toPath())) {
+            journal.append("container", "a");
+            assertThat(journal.takeBatch("container").getKeys()).containsExactly("a");
+        }
+        try (ChangeJournal journal = new ChangeJournal(folder.getRoot().toPath())) {
+            journal.append("container", "b");
+            assertThat(journal.takeBatch("container").getKeys()).containsExactly("a", "b");
+        }
+    }
+
+    @Test
+    public void testEmptyContainer() throws Exception {
+        try (ChangeJournal journal = new ChangeJournal(folder.getRoot().toPath())) {
+            assertThat(journal.takeBatch("container").getKeys()).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Test;
+
+public final class ContentDigestTest {
+    private static final ByteSource CONTENT = ByteSource.wrap("bounce".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    public void testDigestOfLastStream() throws Exception {
+        ContentDigest digest = new ContentDigest();
+        ByteSource source = digest.wrap(CONTENT);
+        try (InputStream in = source.openStream()) {
+            in.read();
+        }
+        // a retried upload reads everything again
+        try (InputStream in = source.openStream()) {
+            ByteStreams.toByteArray(in);
+        }
+        assertThat(digest.hash()).isEqualTo(CONTENT.hash(Hashing.md5()));
+    }
+
+    @Test
+    public void testNoDigestOfSlices() throws Exception {
+        ContentDigest digest = new ContentDigest();
+        assertThat(digest.hash()).isNull();
+        ByteSource source = digest.wrap(CONTENT);
+        assertThat(source.slice(0, 3).read()).isEqualTo(CONTENT.slice(0, 3).read());
+        assertThat(digest.hash()).isNull();
+    }
+
+    @Test
+    public void testMD5FromETag() throws Exception {
+        HashCode md5 = CONTENT.hash(Hashing.md5());
+        assertThat(ContentDigest.md5FromETag(md5.toString())).isEqualTo(md5);
+        assertThat(ContentDigest.md5FromETag("\"" + md5.toString().toUpperCase() + "\"")).isEqualTo(md5);
+        assertThat(ContentDigest.md5FromETag(md5 + "-2")).isNull();
+        assertThat(ContentDigest.md5FromETag("0x8D2F5E1F3B1A2C4")).isNull();
+        assertThat(ContentDigest.md5FromETag(null)).isNull();
+    }
+
+    @Test
+    public void testMultipartETag() throws Exception {
+        HashCode part1 = CONTENT.hash(Hashing.md5());
+        HashCode part2 = Hashing.md5().hashInt(42);
+        byte[] both = new byte[32];
+        System.arraycopy(part1.asBytes(), 0, both, 0, 16);
+        System.arraycopy(part2.asBytes(), 0, both, 16, 16);
+        assertThat(ContentDigest.multipartETag(ImmutableList.of(part1, part2)))
+                .isEqualTo(Hashing.md5().hashBytes(both) + "-2");
+    }
+
+    @Test(expected = DigestMismatchException.class)
+    public void testVerifyMismatch() throws Exception {
+        ContentDigest.verify("blob", "source", CONTENT.hash(Hashing.md5()), Hashing.md5().hashInt(42));
+    }
+
+    @Test
+    public void testVerifyUnknown() throws Exception {
+        ContentDigest.verify("blob", "source", CONTENT.hash(Hashing.md5()), null);
+        ContentDigest.verify("blob", "source", CONTENT.hash(Hashing.md5()), CONTENT.hash(Hashing.md5()));
+    }
+}
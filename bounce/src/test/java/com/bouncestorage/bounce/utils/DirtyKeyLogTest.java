@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirtyKeyLogTest {
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMarkDirtyAndClean() throws Exception {
+        Instant now = Instant.ofEpochMilli(1000);
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+            log.markDirty("container", "a", now);
+            log.markDirty("container", "b", now);
+            log.markDirty("other", "c", now);
+            log.markClean("container", "a");
+            log.markClean("container", "unknown");
+
+            assertThat(log.isDirty("container", "a")).isFalse();
+            assertThat(log.isDirty("container", "b")).isTrue();
+            assertThat(log.getDirtyKeys("container")).containsOnlyKeys("b");
+            assertThat(log.getContainers()).contains("container", "other");
+        }
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        Instant now = Instant.ofEpochMilli(1000);
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+            log.markDirty("container", "a", now);
+            log.markDirty("container", "b", now);
+            log.markClean("container", "b");
+        }
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+            assertThat(log.getDirtyKeys("container")).containsEntry("a", now).hasSize(1);
+            log.markDirty("container", "c", now);
+        }
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+            assertThat(log.getDirtyKeys("container")).containsOnlyKeys("a", "c");
+        }
+        // every startup compacts the log into a single segment
+        assertThat(folder.getRoot().listFiles((File dir, String name) -> name.endsWith(".wal"))).hasSize(1);
+    }
+
+    @Test
+    public void testReplayGarbageTail() throws Exception {
+        Instant now = Instant.ofEpochMilli(1000);
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+            log.markDirty("container", "a", now);
+        }
+        // a crash during a sync can leave zeroes or garbage after the last record
+        Path segment = getSegment();
+        long size = Files.size(segment);
+        Files.write(segment, new byte[] {0, 0, 0, 0, 0x7f, 0x13}, StandardOpenOption.APPEND);
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+            assertThat(Files.exists(segment)).isFalse();
+            assertThat(Files.size(getSegment())).isEqualTo(size);
+            assertThat(log.getDirtyKeys("container")).containsEntry("a", now).hasSize(1);
+            log.markDirty("container", "b", now);
+        }
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+            assertThat(log.getDirtyKeys("container")).containsOnlyKeys("a", "b");
+        }
+    }
+
+    @Test
+    public void testReplayCorruptSealedSegment() throws Exception {
+        Instant now = Instant.ofEpochMilli(1000);
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+            log.markDirty("container", "a", now);
+        }
+        Path segment = getSegment();
+        Files.write(segment, new byte[] {0x7f, 0x13}, StandardOpenOption.APPEND);
+        // a later segment seals the corrupt one
+        Files.createFile(folder.getRoot().toPath().resolve(String.format("%020d.wal", Long.MAX_VALUE)));
+        assertThatThrownBy(() -> new DirtyKeyLog(folder.getRoot().toPath(), SEGMENT_SIZE))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testConcurrentWritersAndRoll() throws Exception {
+        Instant now = Instant.ofEpochMilli(1000);
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), 1024)) {
+            IntStream.range(0, 1000).parallel().forEach(i -> {
+                log.markDirty("container", "key" + i, now);
+                if (i % 2 == 0) {
+                    log.markClean("container", "key" + i);
+                }
+            });
+            assertThat(log.getDirtyKeys("container")).hasSize(500);
+        }
+        try (DirtyKeyLog log = new DirtyKeyLog(folder.getRoot().toPath(), 1024)) {
+            assertThat(log.getDirtyKeys("container")).hasSize(500);
+            assertThat(log.isDirty("container", "key1")).isTrue();
+            assertThat(log.isDirty("container", "key2")).isFalse();
+        }
+    }
+
+    private Path getSegment() {
+        File[] segments = folder.getRoot().listFiles((File dir, String name) -> name.endsWith(".wal"));
+        assertThat(segments).hasSize(1);
+        return segments[0].toPath();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MutableBlobMetadata;
+import org.jclouds.blobstore.domain.internal.MutableBlobMetadataImpl;
+import org.junit.Test;
+
+public final class LinkMetadataCacheTest {
+    @Test
+    public void testGetMatchesLinkETag() {
+        LinkMetadataCache cache = new LinkMetadataCache(1024 * 1024);
+        cache.put("container", "key", "link1", makeMetadata("key", "etag1"));
+        assertThat(cache.get("container", "key", "link1").getETag()).isEqualTo("etag1");
+        // the link was replaced
+        assertThat(cache.get("container", "key", "link2")).isNull();
+        assertThat(cache.get("container", "other", "link1")).isNull();
+        assertThat(cache.get("container", "key", null)).isNull();
+    }
+
+    @Test
+    public void testInvalidate() {
+        LinkMetadataCache cache = new LinkMetadataCache(1024 * 1024);
+        cache.put("container", "key", "link1", makeMetadata("key", "etag1"));
+        cache.invalidate("container", "key");
+        assertThat(cache.get("container", "key", "link1")).isNull();
+    }
+
+    @Test
+    public void testReturnsCopies() {
+        LinkMetadataCache cache = new LinkMetadataCache(1024 * 1024);
+        cache.put("container", "key", "link1", makeMetadata("key", "etag1"));
+        ((MutableBlobMetadata) cache.get("container", "key", "link1")).setETag("changed");
+        assertThat(cache.get("container", "key", "link1").getETag()).isEqualTo("etag1");
+    }
+
+    @Test
+    public void testBoundedBySize() {
+        LinkMetadataCache cache = new LinkMetadataCache(10 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("container", "key" + i, "link", makeMetadata("key" + i, "etag"));
+        }
+        assertThat(cache.size()).isLessThan(100);
+    }
+
+    private static BlobMetadata makeMetadata(String name, String etag) {
+        MutableBlobMetadata metadata = new MutableBlobMetadataImpl();
+        metadata.setName(name);
+        metadata.setETag(etag);
+        return metadata;
+    }
+}
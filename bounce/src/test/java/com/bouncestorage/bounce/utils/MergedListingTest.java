@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import org.jclouds.blobstore.domain.MutableStorageMetadata;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.internal.MutableStorageMetadataImpl;
+import org.junit.Test;
+
+public final class MergedListingTest {
+    @Test
+    public void testMergeTiers() {
+        MergedListing listing = new MergedListing(ImmutableList.of(
+                listing("a", "c", "d"), listing("b", "c"), listing("c", "e")));
+        List<String> rows = new ArrayList<>();
+        while (listing.hasNext()) {
+            assertThat(listing.peekName()).isNotNull();
+            StringBuilder row = new StringBuilder();
+            for (StorageMetadata meta : listing.next()) {
+                row.append(meta == null ? "-" : meta.getName());
+            }
+            rows.add(row.toString());
+        }
+        assertThat(rows).containsExactly("a--", "-b-", "ccc", "d--", "--e");
+        assertThat(listing.peekName()).isNull();
+    }
+
+    @Test
+    public void testExhaustedTier() {
+        MergedListing listing = new MergedListing(ImmutableList.of(listing("a"), listing("a", "b")));
+        assertThat(listing.isExhausted(0)).isFalse();
+        listing.next();
+        assertThat(listing.isExhausted(0)).isTrue();
+        assertThat(listing.isExhausted(1)).isFalse();
+        assertThat(listing.next()[1].getName()).isEqualTo("b");
+        assertThat(listing.hasNext()).isFalse();
+    }
+
+    private static Iterator<StorageMetadata> listing(String... names) {
+        List<StorageMetadata> entries = new ArrayList<>();
+        for (String name : names) {
+            MutableStorageMetadata meta = new MutableStorageMetadataImpl();
+            meta.setName(name);
+            entries.add(meta);
+        }
+        return entries.iterator();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.bouncestorage.bounce.ForwardingBlobStore;
+import com.bouncestorage.bounce.Utils;
+import com.bouncestorage.bounce.UtilsTest;
+import com.bouncestorage.bounce.admin.BackendThrottle;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.io.Payload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class MultipartCopierTest {
+    private static final long SIZE = 20 * 1024 * 1024 + 1;
+
+    private BlobStore from;
+    private BlobStore to;
+    private String containerName;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        from = UtilsTest.createTransientBlobStore();
+        to = UtilsTest.createTransientBlobStore();
+        containerName = Utils.createRandomContainerName();
+        from.createContainerInLocation(null, containerName);
+        to.createContainerInLocation(null, containerName);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPartSize() {
+        long partSize = MultipartCopier.getPartSize(to, SIZE);
+        assertThat(partSize).isGreaterThanOrEqualTo(to.getMinimumMultipartPartSize());
+        assertThat(partSize).isLessThanOrEqualTo(to.getMaximumMultipartPartSize());
+        // the object does not fit in a single part
+        assertThat(partSize).isLessThan(SIZE);
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        byte[] data = new byte[(int) SIZE];
+        new Random().nextBytes(data);
+        Blob blob = UtilsTest.makeBlob(from, "blob", ByteSource.wrap(data));
+        blob.getMetadata().setUserMetadata(ImmutableMap.of("key", "value"));
+        from.putBlob(containerName, blob);
+
+        // a budget smaller than the object makes parts wait for each other
+        MultipartCopier copier = new MultipartCopier(executor, 10 * 1024 * 1024, 1);
+        copier.copy(from, containerName, to, containerName, from.blobMetadata(containerName, "blob"));
+
+        Blob copy = to.getBlob(containerName, "blob");
+        assertThat(copy.getMetadata().getUserMetadata()).containsEntry("key", "value");
+        assertThat(copy.getMetadata().getContentMetadata().getContentLength()).isEqualTo(SIZE);
+        try (InputStream in = copy.getPayload().openStream()) {
+            assertThat(ByteStreams.toByteArray(in)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void testCopyInBackground() throws Exception {
+        from.putBlob(containerName, UtilsTest.makeBlob(from, "blob", ByteSource.wrap(new byte[(int) SIZE])));
+        Queue<Boolean> background = new ConcurrentLinkedQueue<>();
+        BlobStore recording = new ForwardingBlobStore(to) {
+            @Override
+            public MultipartPart uploadMultipartPart(MultipartUpload upload, int partNumber, Payload payload) {
+                background.add(BackendThrottle.isBackground());
+                return super.uploadMultipartPart(upload, partNumber, payload);
+            }
+        };
+
+        MultipartCopier copier = new MultipartCopier(executor, 64 * 1024 * 1024, 1);
+        BackendThrottle.background(() -> copier.copy(from, containerName, recording, containerName,
+                from.blobMetadata(containerName, "blob"))).call();
+        // the parts are throttled like the copy they belong to
+        assertThat(background).isNotEmpty().doesNotContain(false);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class RingBufferTeeTest {
+    private ExecutorService executor;
+    private byte[] content;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        content = new byte[100 * 1024];
+        new Random(0).nextBytes(content);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testConsumersReadAtTheirOwnPace() throws Exception {
+        RingBufferTee tee = new RingBufferTee("blob", new ByteArrayInputStream(content), 4096, 3);
+        Future<byte[]> fast = executor.submit(() -> readFully(tee.getStream(0), 8192, 0));
+        Future<byte[]> slow = executor.submit(() -> readFully(tee.getStream(1), 1000, 1));
+        Future<byte[]> bytewise = executor.submit(() -> {
+            InputStream in = tee.getStream(2);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+            in.close();
+            return out.toByteArray();
+        });
+        assertThat(fast.get(10, TimeUnit.SECONDS)).isEqualTo(content);
+        assertThat(slow.get(10, TimeUnit.SECONDS)).isEqualTo(content);
+        assertThat(bytewise.get(10, TimeUnit.SECONDS)).isEqualTo(content);
+        // the fast consumer cannot run more than the buffer ahead of the slow one
+        assertThat(tee.getConsumerWaitMillis(0)).isGreaterThan(0);
+    }
+
+    @Test
+    public void testClosedConsumerDoesNotBlockOthers() throws Exception {
+        RingBufferTee tee = new RingBufferTee("blob", new ByteArrayInputStream(content), 4096, 2);
+        InputStream abandoned = tee.getStream(1);
+        assertThat(abandoned.read(new byte[10])).isEqualTo(10);
+        abandoned.close();
+        Future<byte[]> reader = executor.submit(() -> readFully(tee.getStream(0), 8192, 0));
+        assertThat(reader.get(10, TimeUnit.SECONDS)).isEqualTo(content);
+        try {
+            abandoned.read();
+            fail("expected IOException");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUpstreamFailurePropagates() throws Exception {
+        InputStream failing = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ >= 5000) {
+                    throw new IOException("connection reset");
+                }
+                return 0;
+            }
+        };
+        RingBufferTee tee = new RingBufferTee("blob", failing, 4096, 2);
+        Future<byte[]> first = executor.submit(() -> readFully(tee.getStream(0), 100, 0));
+        Future<byte[]> second = executor.submit(() -> readFully(tee.getStream(1), 100, 0));
+        for (Future<byte[]> future : ImmutableList.of(first, second)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("expected IOException");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IOException.class);
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int chunk, long delayMillis) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[chunk];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
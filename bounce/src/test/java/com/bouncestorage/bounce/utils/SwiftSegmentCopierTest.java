@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) Bounce Storage, Inc. All rights reserved.
+ * For more information, please see COPYRIGHT in the top-level directory.
+ */
+
+package com.bouncestorage.bounce.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.bouncestorage.bounce.Utils;
+import com.bouncestorage.bounce.UtilsTest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MutableBlobMetadata;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.internal.MutableBlobMetadataImpl;
+import org.junit.Test;
+
+public final class SwiftSegmentCopierTest {
+    private static final String OLD_UPLOAD = "blob/slo/1449874862.123456/30/10";
+    private static final String NEW_UPLOAD = "blob/slo/1449874900.654321/20/10";
+
+    @Test
+    public void testFindSegmentsOfManifest() {
+        List<StorageMetadata> listing = ImmutableList.of(
+                makeSegment(OLD_UPLOAD, 1, "aa", 10),
+                makeSegment(OLD_UPLOAD, 2, "bb", 10),
+                makeSegment(OLD_UPLOAD, 3, "cc", 10),
+                makeSegment(NEW_UPLOAD, 1, "dd", 10),
+                makeSegment(NEW_UPLOAD, 2, "ee", 10));
+
+        List<StorageMetadata> segments = SwiftSegmentCopier.findSegments(listing, manifestETag("dd", "ee"), 20L);
+        assertThat(segments).extracting("name").containsExactly(NEW_UPLOAD + "/00000001", NEW_UPLOAD + "/00000002");
+        segments = SwiftSegmentCopier.findSegments(listing, "\"" + manifestETag("aa", "bb", "cc") + "\"", 30L);
+        assertThat(segments).hasSize(3);
+    }
+
+    @Test
+    public void testFindNoSegments() {
+        List<StorageMetadata> listing = ImmutableList.of(
+                makeSegment(OLD_UPLOAD, 1, "aa", 10),
+                makeSegment(OLD_UPLOAD, 3, "cc", 10));
+        // a plain object
+        assertThat(SwiftSegmentCopier.findSegments(listing, "0123456789abcdef", 20L)).isNull();
+        // a segment is missing
+        assertThat(SwiftSegmentCopier.findSegments(listing, manifestETag("aa", "cc"), 20L)).isNull();
+        assertThat(SwiftSegmentCopier.findSegments(ImmutableList.of(), manifestETag(), 0L)).isNull();
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        BlobStore from = UtilsTest.createTransientBlobStore();
+        BlobStore to = UtilsTest.createTransientBlobStore();
+        String containerName = Utils.createRandomContainerName();
+        from.createContainerInLocation(null, containerName);
+        to.createContainerInLocation(null, containerName);
+        byte[] first = "segment 1!".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "segment 2!".getBytes(StandardCharsets.UTF_8);
+        String etag1 = from.putBlob(containerName, UtilsTest.makeBlob(from, NEW_UPLOAD + "/00000001",
+                ByteSource.wrap(first)));
+        String etag2 = from.putBlob(containerName, UtilsTest.makeBlob(from, NEW_UPLOAD + "/00000002",
+                ByteSource.wrap(second)));
+
+        // the manifest as swift reports it, and the metadata of the copy, which has no etag yet
+        MutableBlobMetadata source = new MutableBlobMetadataImpl();
+        source.setName("blob");
+        source.setETag(manifestETag(etag1.replace("\"", ""), etag2.replace("\"", "")));
+        source.setSize(20L);
+        Blob copy = to.blobBuilder("blob").payload(new byte[0]).contentLength(20).build();
+        BlobMetadata metadata = copy.getMetadata();
+        assertThat(metadata.getETag()).isNull();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SwiftSegmentCopier copier = new SwiftSegmentCopier(executor, 2);
+            assertThat(copier.copy(from, containerName, source, to, containerName, metadata)).isTrue();
+            // the copy metadata cannot identify the segments
+            assertThat(copier.copy(from, containerName, metadata, to, containerName, metadata)).isFalse();
+        } finally {
+            executor.shutdownNow();
+        }
+        try (InputStream in = to.getBlob(containerName, "blob").getPayload().openStream()) {
+            assertThat(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8))
+                    .isEqualTo("segment 1!segment 2!");
+        }
+    }
+
+    private static StorageMetadata makeSegment(String upload, int partNumber, String etag, long size) {
+        MutableBlobMetadata metadata = new MutableBlobMetadataImpl();
+        metadata.setName(String.format("%s/%08d", upload, partNumber));
+        metadata.setETag(etag);
+        metadata.setSize(size);
+        return metadata;
+    }
+
+    private static String manifestETag(String... etags) {
+        return Hashing.md5().hashString(String.join("", etags), StandardCharsets.US_ASCII).toString();
+    }
+}